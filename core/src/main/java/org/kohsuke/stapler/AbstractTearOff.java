@@ -104,23 +104,22 @@ public abstract class AbstractTearOff<CLT,S,E extends Exception> {
     });
 
     protected final URL findResource(String name, ClassLoader cl) {
+        String resourceName = getResourceName(name);
         URL res = null;
         if (MetaClassLoader.debugLoader != null)
-            res = getResource(name, MetaClassLoader.debugLoader.loader);
+            res = MetaClassLoader.debugLoader.loader.getResource(resourceName);
         if (res == null)
-            res = getResource(name, cl);
+            res = MetaClassLoader.get(cl).getResource(resourceName);
         return res;
     }
 
-    private URL getResource(String name, ClassLoader cl) {
-        URL res;
+    private String getResourceName(String name) {
         if(name.startsWith("/")) {
             // try name as full path to the Jelly script
-            res = cl.getResource(name.substring(1));
+            return name.substring(1);
         } else {
             // assume that it's a view of this class
-            res = cl.getResource(owner.clazz.getName().replace('.','/').replace('$','/')+'/'+name);
+            return owner.clazz.getName().replace('.','/').replace('$','/')+'/'+name;
         }
-        return res;
     }
 }
@@ -12,7 +12,7 @@ class AncestorImpl implements Ancestor {
     private final int listIndex;
 
     private Object object;
-    private String[] tokens;
+    private TokenList tokens;
     private int index;
     private String contextPath;
 
@@ -24,7 +24,7 @@ class AncestorImpl implements Ancestor {
 
     public void set(Object object, RequestImpl req ) {
         this.object = object;
-        this.tokens = req.tokens.rawTokens;
+        this.tokens = req.tokens;
         this.index = req.tokens.idx;
         this.contextPath = req.getContextPath();
     }
@@ -37,7 +37,7 @@ class AncestorImpl implements Ancestor {
         StringBuilder buf = new StringBuilder(contextPath);
         for( int i=0; i<index; i++ ) {
             buf.append('/');
-            buf.append(tokens[i]);
+            buf.append(tokens.getRaw(i));
         }
         
         return buf.toString();
@@ -58,7 +58,7 @@ class AncestorImpl implements Ancestor {
 
     public String getRelativePath() {
         StringBuilder buf = new StringBuilder();
-        for( int i=index; i<tokens.length; i++ ) {
+        for( int i=index; i<tokens.length(); i++ ) {
             if(buf.length()>0)  buf.append('/');
             buf.append("..");
         }
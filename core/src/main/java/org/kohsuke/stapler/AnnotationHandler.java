@@ -13,28 +13,74 @@ import java.util.Map;
  * @author Kohsuke Kawaguchi
  */
 abstract class AnnotationHandler<T extends Annotation> {
-    abstract Object parse(StaplerRequest request, T a, Class type, String parameterName) throws ServletException;
+    /**
+     * Prepares a {@link ParameterResolver} for a parameter that has the given annotation.
+     *
+     * <p>
+     * This is done once per method, so anything that doesn't depend on the request
+     * (such as the parameter name or the converter to use) should be figured out here.
+     */
+    abstract ParameterResolver prepare(T a, Class type, String parameterName);
 
     /**
-     * Helper method for {@link #parse(StaplerRequest, Annotation, Class, String)} to convert to the right type
-     * from String.
+     * Looks up the {@link Converter} for the given type upfront.
+     *
+     * <p>
+     * If there's no converter yet, it's looked up again when a value is actually converted,
+     * since one may be registered later, and the error is reported only if there's still none.
      */
-    protected final Object convert(Class targetType, String value) {
+    protected static Converter lookupConverter(final Class targetType) {
         Converter converter = Stapler.lookupConverter(targetType);
-        if (converter==null)
-            throw new IllegalArgumentException("Unable to convert to "+targetType);
+        if (converter!=null)    return converter;
 
-        return converter.convert(targetType,value);
+        return new Converter() {
+            private volatile Converter found;
+
+            public Object convert(Class type, Object value) {
+                Converter c = found;
+                if(c==null) {
+                    c = Stapler.lookupConverter(targetType);
+                    if(c==null)
+                        throw new IllegalArgumentException("Unable to convert to "+targetType);
+                    found = c;
+                }
+                return c.convert(type,value);
+            }
+        };
     }
 
-    static Object handle(StaplerRequest request, Annotation[] annotations, String parameterName, Class targetType) throws ServletException {
+    /**
+     * Determines the name of the parameter to look up.
+     *
+     * @param explicitName
+     *      The name given in the annotation, or "" if none.
+     * @return
+     *      null if the name is unavailable.
+     */
+    private static String resolveName(String explicitName, String parameterName) {
+        String name = explicitName;
+        if(name.length()==0)    name=parameterName;
+        return name;
+    }
+
+    /**
+     * Reports the missing parameter name when the parameter is actually bound,
+     * which is when it used to be reported before binding was planned upfront.
+     */
+    private static final ParameterResolver NAME_UNAVAILABLE = new ParameterResolver() {
+        Object resolve(StaplerRequest req, StaplerResponse rsp) {
+            throw new IllegalArgumentException("Parameter name unavailable neither in the code nor in annotation");
+        }
+    };
+
+    static ParameterResolver prepare(Annotation[] annotations, String parameterName, Class targetType) {
         for (Annotation a : annotations) {
             AnnotationHandler h = HANDLERS.get(a.annotationType());
             if(h==null)     continue;
-            return h.parse(request,a,targetType,parameterName);
+            return h.prepare(a,targetType,parameterName);
         }
 
-        return null; // probably we should report an error
+        return ParameterResolver.NULL;
     }
 
 
@@ -42,39 +88,52 @@ abstract class AnnotationHandler<T extends Annotation> {
 
     static {
         HANDLERS.put(Header.class,new AnnotationHandler<Header>() {
-            Object parse(StaplerRequest request, Header a, Class type, String parameterName) throws ServletException {
-                String name = a.value();
-                if(name.length()==0)    name=parameterName;
-                if(name==null)
-                    throw new IllegalArgumentException("Parameter name unavailable neither in the code nor in annotation");
+            ParameterResolver prepare(Header a, final Class type, String parameterName) {
+                final String name = resolveName(a.value(),parameterName);
+                if(name==null)  return NAME_UNAVAILABLE;
+                final boolean required = a.required();
+                final Converter converter = lookupConverter(type);
 
-                String value = request.getHeader(name);
-                if(a.required() && value==null)
-                    throw new ServletException("Required HTTP header "+name+" is missing");
+                return new ParameterResolver() {
+                    Object resolve(StaplerRequest request, StaplerResponse rsp) throws ServletException {
+                        String value = request.getHeader(name);
+                        if(required && value==null)
+                            throw new ServletException("Required HTTP header "+name+" is missing");
 
-                return convert(type,value);
+                        return converter.convert(type,value);
+                    }
+                };
             }
         });
 
         HANDLERS.put(QueryParameter.class,new AnnotationHandler<QueryParameter>() {
-            Object parse(StaplerRequest request, QueryParameter a, Class type, String parameterName) throws ServletException {
-                String name = a.value();
-                if(name.length()==0)    name=parameterName;
-                if(name==null)
-                    throw new IllegalArgumentException("Parameter name unavailable neither in the code nor in annotation");
-                
-                String value = request.getParameter(name);
-                if(a.required() && value==null)
-                    throw new ServletException("Required Query parameter "+name+" is missing");
-                if(a.fixEmpty() && value!=null && value.length()==0)
-                    value = null;
-                return convert(type,value);
+            ParameterResolver prepare(QueryParameter a, final Class type, String parameterName) {
+                final String name = resolveName(a.value(),parameterName);
+                if(name==null)  return NAME_UNAVAILABLE;
+                final boolean required = a.required();
+                final boolean fixEmpty = a.fixEmpty();
+                final Converter converter = lookupConverter(type);
+
+                return new ParameterResolver() {
+                    Object resolve(StaplerRequest request, StaplerResponse rsp) throws ServletException {
+                        String value = request.getParameter(name);
+                        if(required && value==null)
+                            throw new ServletException("Required Query parameter "+name+" is missing");
+                        if(fixEmpty && value!=null && value.length()==0)
+                            value = null;
+                        return converter.convert(type,value);
+                    }
+                };
             }
         });
 
         HANDLERS.put(AncestorInPath.class,new AnnotationHandler<AncestorInPath>() {
-            Object parse(StaplerRequest request, AncestorInPath a, Class type, String parameterName) throws ServletException {
-                return request.findAncestorObject(type);
+            ParameterResolver prepare(AncestorInPath a, final Class type, String parameterName) {
+                return new ParameterResolver() {
+                    Object resolve(StaplerRequest request, StaplerResponse rsp) {
+                        return request.findAncestorObject(type);
+                    }
+                };
             }
         });
     }
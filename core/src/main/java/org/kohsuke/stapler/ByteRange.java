@@ -0,0 +1,134 @@
+package org.kohsuke.stapler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One range of bytes requested by the HTTP Range header, as specified in RFC 7233.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class ByteRange {
+    /**
+     * Offset of the first byte, inclusive.
+     */
+    final long first;
+    /**
+     * Offset of the last byte, inclusive.
+     */
+    final long last;
+
+    ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    long length() {
+        return last-first+1;
+    }
+
+    /**
+     * Value of the Content-Range header for this range.
+     */
+    String toContentRange(long contentLength) {
+        return "bytes "+first+'-'+last+'/'+contentLength;
+    }
+
+    @Override
+    public String toString() {
+        return first+"-"+last;
+    }
+
+    /**
+     * Parses the value of the Range header, like "bytes=0-499", "bytes=500-", "bytes=-500",
+     * or "bytes=0-0,-1".
+     *
+     * @param contentLength
+     *      Length of the entity.
+     * @return
+     *      null if the header is malformed or not worth honoring, in which case the whole entity
+     *      should be sent. Empty list if none of the ranges are satisfiable, in which case 416
+     *      should be sent. Otherwise ranges trimmed to the entity, in the order requested.
+     */
+    static List<ByteRange> parse(String header, long contentLength) {
+        if(header==null || !header.startsWith(UNIT))
+            return null;
+
+        List<ByteRange> ranges = new ArrayList<ByteRange>();
+        for (String spec : header.substring(UNIT.length()).split(",")) {
+            spec = spec.trim();
+            if(spec.length()==0)
+                continue;   // the grammar allows empty elements in a list
+
+            int idx = spec.indexOf('-');
+            if(idx<0)
+                return null;
+            long first = parseNumber(spec.substring(0,idx));
+            long last = parseNumber(spec.substring(idx+1));
+
+            if(idx==0) {
+                // suffix-byte-range-spec, like "-500" for the last 500 bytes
+                if(last<0)
+                    return null;
+                if(last==0 || contentLength==0)
+                    continue;   // unsatisfiable
+                ranges.add(new ByteRange(Math.max(0,contentLength-last),contentLength-1));
+            } else {
+                if(first<0)
+                    return null;
+                if(idx+1<spec.length()) {
+                    if(last<0 || last<first)
+                        return null;
+                } else {
+                    last = Long.MAX_VALUE;  // "500-" means all the way to the end
+                }
+                if(first>=contentLength)
+                    continue;   // unsatisfiable
+                ranges.add(new ByteRange(first,Math.min(last,contentLength-1)));
+            }
+
+            if(ranges.size()>MAX_RANGES)
+                return null;    // don't let a client make us do silly amount of work
+        }
+        return ranges;
+    }
+
+    /**
+     * Are ranges in the ascending order without overlaps,
+     * so that they can be served by reading the entity sequentially?
+     */
+    static boolean isAscending(List<ByteRange> ranges) {
+        long next = 0;
+        for (ByteRange r : ranges) {
+            if(r.first<next)
+                return false;
+            next = r.last+1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a non-negative decimal number.
+     *
+     * @return -1 if it's not a number, or too big to be an offset.
+     */
+    private static long parseNumber(String s) {
+        if(s.length()==0 || s.length()>18)
+            return -1;
+        long r = 0;
+        for (int i=0; i<s.length(); i++) {
+            char ch = s.charAt(i);
+            if(ch<'0' || '9'<ch)
+                return -1;
+            r = r*10+(ch-'0');
+        }
+        return r;
+    }
+
+    private static final String UNIT = "bytes=";
+
+    /**
+     * Beyond this number of ranges, we just send the whole entity.
+     */
+    static final int MAX_RANGES = 16;
+}
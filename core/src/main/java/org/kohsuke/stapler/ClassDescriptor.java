@@ -30,10 +30,13 @@ final class ClassDescriptor {
         this.clazz = clazz;
         this.fields = clazz.getFields();
 
-        // instance methods
-        List<Function> functions = new ArrayList<Function>();
-        for (Method m : clazz.getMethods()) {
-            functions.add(new Function.InstanceFunction(m).protectBy(m));
+        // instance methods. use the build-time route table if available
+        List<Function> functions = MetaClass.USE_ROUTE_DESCRIPTORS ? RouteDescriptor.load(clazz) : null;
+        if(functions==null) {
+            functions = new ArrayList<Function>();
+            for (Method m : clazz.getMethods()) {
+                functions.add(new Function.InstanceFunction(m).protectBy(m));
+            }
         }
         if(wrappers!=null) {
             for (Class w : wrappers) {
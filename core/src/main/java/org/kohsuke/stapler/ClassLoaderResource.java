@@ -0,0 +1,149 @@
+package org.kohsuke.stapler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Metadata of a resource in a class loader, cached by {@link MetaClassLoader#findResource(String)}.
+ *
+ * <p>
+ * For a resource in a jar file, {@link #url} reads the entry from the jar file that
+ * {@link MetaClassLoader} keeps open, instead of locating and opening the jar file
+ * through {@link java.net.JarURLConnection} every time.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class ClassLoaderResource {
+    /**
+     * Name of the resource, as given to {@link ClassLoader#getResource(String)}.
+     */
+    public final String name;
+
+    /**
+     * URL of the resource. It has the same string form as the one the class loader returns.
+     */
+    public final URL url;
+
+    /**
+     * Size of the resource in bytes, or -1 if unknown.
+     */
+    public final long length;
+
+    /**
+     * Timestamp of the resource, or 0 if unknown.
+     */
+    public final long lastModified;
+
+    /**
+     * File that the resource is read from, which is the jar file for a resource in a jar file,
+     * or null if unknown.
+     */
+    /*package*/ final File source;
+
+    /**
+     * Size and timestamp of {@link #source} when the resource was looked up,
+     * to tell if it has been rewritten since.
+     */
+    private final long sourceLength, sourceLastModified;
+
+    ClassLoaderResource(String name, URL url, long length, long lastModified) {
+        this(name,url,length,lastModified,null,-1,0);
+    }
+
+    ClassLoaderResource(String name, URL url, long length, long lastModified, File source, long sourceLength, long sourceLastModified) {
+        this.name = name;
+        this.url = url;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.source = source;
+        this.sourceLength = sourceLength;
+        this.sourceLastModified = sourceLastModified;
+    }
+
+    /**
+     * Has {@link #source} been modified since the resource was looked up?
+     * This costs a couple of file system calls, but no reads.
+     */
+    /*package*/ boolean isModified() {
+        return source!=null && (source.lastModified()!=sourceLastModified || source.length()!=sourceLength);
+    }
+
+    /**
+     * Creates the metadata of an entry in the jar file kept open.
+     *
+     * @param original
+     *      URL that the class loader returned, which is used once the jar file is closed.
+     * @param jarLength
+     *      Size of the jar file when it was opened.
+     * @param jarLastModified
+     *      Timestamp of the jar file when it was opened.
+     */
+    static ClassLoaderResource create(String name, URL original, File file, JarFile jar, long jarLength, long jarLastModified, JarEntry entry) throws IOException {
+        URL url = new URL(null,original.toString(),new JarEntryHandler(original,jar,entry));
+        return new ClassLoaderResource(name,url,entry.getSize(),entry.getTime()<0 ? 0 : entry.getTime(),file,jarLength,jarLastModified);
+    }
+
+    @Override
+    public String toString() {
+        return url.toString();
+    }
+
+    private static final class JarEntryHandler extends URLStreamHandler {
+        private final URL original;
+        private final JarFile jar;
+        private final JarEntry entry;
+
+        JarEntryHandler(URL original, JarFile jar, JarEntry entry) {
+            this.original = original;
+            this.jar = jar;
+            this.entry = entry;
+        }
+
+        protected URLConnection openConnection(URL u) throws IOException {
+            return new URLConnection(u) {
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    try {
+                        return jar.getInputStream(entry);
+                    } catch (IllegalStateException e) {
+                        // the jar file has been closed by MetaClassLoader.discard(), or because it was rewritten
+                        return original.openStream();
+                    }
+                }
+
+                @Override
+                public int getContentLength() {
+                    long size = entry.getSize();
+                    return size<=Integer.MAX_VALUE ? (int)size : -1;
+                }
+
+                @Override
+                public String getHeaderField(String name) {
+                    if(name.equalsIgnoreCase("content-length") && entry.getSize()>=0)
+                        return String.valueOf(entry.getSize());
+                    return null;
+                }
+
+                @Override
+                public long getLastModified() {
+                    return entry.getTime()<0 ? 0 : entry.getTime();
+                }
+
+                @Override
+                public String getContentType() {
+                    return guessContentTypeFromName(entry.getName());
+                }
+            };
+        }
+    }
+}
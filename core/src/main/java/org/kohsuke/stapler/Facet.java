@@ -77,4 +77,14 @@ public abstract class Facet {
      *      true if the processing succeeds. Otherwise false.
      */
     public abstract boolean handleIndexRequest(RequestImpl req, ResponseImpl rsp, Object node, MetaClass nodeMetaClass) throws IOException, ServletException;
+
+    /**
+     * Loads the views of the given class that are likely to be requested, such as the 'index' view,
+     * so that the first request doesn't have to compile them.
+     *
+     * <p>
+     * Called from background threads by {@link WebApp#warmUp(Object)}. The default implementation does nothing.
+     */
+    public void warmUp(MetaClass owner) {
+    }
 }
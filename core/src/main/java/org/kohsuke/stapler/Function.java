@@ -20,6 +20,13 @@ import java.net.URL;
  * @author Kohsuke Kawaguchi
  */
 abstract class Function {
+    /**
+     * Lazily computed plan of how to fill in the parameters of this function.
+     *
+     * @see #bindAndInvoke(Object, StaplerRequest, StaplerResponse, Object[])
+     */
+    private volatile ParameterResolver[] resolvers;
+
     /**
      * Gets the method name.
      */
@@ -73,34 +80,54 @@ abstract class Function {
      * then finally call {@link #invoke}.
      */
     Object bindAndInvoke(Object o, StaplerRequest req, StaplerResponse rsp, Object... headArgs) throws IllegalAccessException, InvocationTargetException, ServletException {
-        Class[] types = getParameterTypes();
-        Annotation[][] annotations = getParameterAnnotatoins();
-        String[] parameterNames = getParameterNames();
+        ParameterResolver[] resolvers = getParameterResolvers();
 
-        Object[] arguments = new Object[types.length];
+        if(resolvers.length==0)
+            return invoke(req,o,NO_ARGS);
+
+        Object[] arguments = new Object[resolvers.length];
 
         // fill in the first N arguments
         System.arraycopy(headArgs,0,arguments,0,headArgs.length);
 
-        // find the rest of the arguments. either known types, or with annotations
-        for( int i=headArgs.length; i<types.length; i++ ) {
-            Class t = types[i];
-            if(t==StaplerRequest.class || t==HttpServletRequest.class) {
-                arguments[i] = req;
-                continue;
-            }
-            if(t==StaplerResponse.class || t==HttpServletResponse.class) {
-                arguments[i] = rsp;
-                continue;
-            }
-            arguments[i] = AnnotationHandler.handle(req,annotations[i],
-                i<parameterNames.length ? parameterNames[i] : null,
-                t);
-        }
+        // find the rest of the arguments
+        for( int i=headArgs.length; i<resolvers.length; i++ )
+            arguments[i] = resolvers[i].resolve(req,rsp);
 
         return invoke(req,o,arguments);
     }
 
+    private ParameterResolver[] getParameterResolvers() {
+        ParameterResolver[] r = resolvers;
+        if(r==null)
+            resolvers = r = buildParameterResolvers();
+        return r;
+    }
+
+    /**
+     * Figures out how to fill in each parameter, either from known types or from annotations.
+     */
+    private ParameterResolver[] buildParameterResolvers() {
+        Class[] types = getParameterTypes();
+        Annotation[][] annotations = getParameterAnnotatoins();
+        String[] parameterNames = getParameterNames();
+
+        ParameterResolver[] r = new ParameterResolver[types.length];
+        for( int i=0; i<types.length; i++ ) {
+            Class t = types[i];
+            if(t==StaplerRequest.class || t==HttpServletRequest.class)
+                r[i] = ParameterResolver.REQUEST;
+            else
+            if(t==StaplerResponse.class || t==HttpServletResponse.class)
+                r[i] = ParameterResolver.RESPONSE;
+            else
+                r[i] = AnnotationHandler.prepare(annotations[i],
+                    i<parameterNames.length ? parameterNames[i] : null,
+                    t);
+        }
+        return r;
+    }
+
     /**
      * Invokes the method.
      */
@@ -109,24 +136,44 @@ abstract class Function {
     final Function protectBy(Method m) {
         try {
             LimitedTo a = m.getAnnotation(LimitedTo.class);
-            if(a==null)
-                return this;    // not protected
-            else
-                return new ProtectedFunction(this,a.value());
+            return protectBy(a!=null ? a.value() : null);
         } catch (LinkageError e) {
             // running in JDK 1.4
             return this;
         }
     }
 
+    /**
+     * Wraps this function into {@link ProtectedFunction} if the role is non-null.
+     */
+    final Function protectBy(String role) {
+        if(role==null)
+            return this;    // not protected
+        else
+            return new ProtectedFunction(this,role);
+    }
+
     public abstract <A extends Annotation> A getAnnotation(Class<A> annotation);
 
+    /**
+     * Gets the URL names assigned by {@link WebMethod#name()}, or null if there's none.
+     */
+    abstract String[] getWebMethodNames();
+
     private abstract static class MethodFunction extends Function {
         protected final Method m;
+        protected final MethodInvoker invoker;
         private volatile String[] names;
+        /**
+         * {@link WebMethod#name()} if it's already known from {@link RouteDescriptor},
+         * or null to read it from the annotation.
+         */
+        private final String[] webMethodNames;
 
-        public MethodFunction(Method m) {
+        public MethodFunction(Method m, String[] webMethodNames) {
             this.m = m;
+            this.invoker = MethodInvoker.create(m);
+            this.webMethodNames = webMethodNames;
         }
 
         public final String getName() {
@@ -142,6 +189,13 @@ abstract class Function {
             return m.getAnnotation(annotation);
         }
 
+        final String[] getWebMethodNames() {
+            if(webMethodNames!=null)
+                return webMethodNames;
+            WebMethod a = m.getAnnotation(WebMethod.class);
+            return a!=null ? a.name() : null;
+        }
+
         final String[] getParameterNames() {
             if(names==null)
                 names = loadParameterNames(m);
@@ -170,7 +224,11 @@ abstract class Function {
      */
     static final class InstanceFunction extends MethodFunction {
         public InstanceFunction(Method m) {
-            super(m);
+            super(m,null);
+        }
+
+        public InstanceFunction(Method m, String[] webMethodNames) {
+            super(m,webMethodNames);
         }
 
         public Class[] getParameterTypes() {
@@ -182,7 +240,7 @@ abstract class Function {
         }
 
         public Object invoke(HttpServletRequest req, Object o, Object... args) throws IllegalAccessException, InvocationTargetException {
-            return m.invoke(o,args);
+            return invoker.invoke(o,args);
         }
     }
 
@@ -191,7 +249,7 @@ abstract class Function {
      */
     static final class StaticFunction extends MethodFunction {
         public StaticFunction(Method m) {
-            super(m);
+            super(m,null);
         }
 
         public Class[] getParameterTypes() {
@@ -212,7 +270,7 @@ abstract class Function {
             Object[] r = new Object[args.length+1];
             r[0] = o;
             System.arraycopy(args,0,r,1,args.length);
-            return m.invoke(null,r);
+            return invoker.invoke(null,r);
         }
     }
 
@@ -259,8 +317,18 @@ abstract class Function {
         public <A extends Annotation> A getAnnotation(Class<A> annotation) {
             return core.getAnnotation(annotation);
         }
+
+        String[] getWebMethodNames() {
+            return core.getWebMethodNames();
+        }
     }
 
+    /**
+     * Pass this to {@link #invoke(HttpServletRequest, Object, Object[])} for no-arg methods,
+     * to avoid allocating an empty varargs array on every call.
+     */
+    static final Object[] NO_ARGS = new Object[0];
+
     private static final String[] EMPTY_ARRAY = new String[0];
     private static final Logger LOGGER = Logger.getLogger(Function.class.getName());
 }
@@ -5,9 +5,14 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The stapler version of the {@link Class} object,
@@ -29,6 +34,12 @@ public class MetaClass extends TearOffSupport {
 
     public final List<Dispatcher> dispatchers = new ArrayList<Dispatcher>();
 
+    /**
+     * {@link #dispatchers} indexed by the URL token that they can consume.
+     * Lazily (re)built by {@link #getDispatchers(String)}.
+     */
+    private volatile DispatcherIndex index;
+
     /**
      * Base metaclass.
      * Note that <tt>baseClass.clazz==clazz.getSuperClass()</tt>
@@ -40,6 +51,12 @@ public class MetaClass extends TearOffSupport {
      */
     public final WebApp webApp;
 
+    /**
+     * Resolved side files, keyed by the file name. {@link Optional#none()} records the absence.
+     * See {@link #findSideFile(String)}.
+     */
+    private final Map<String,Optional<String>> sideFiles = new ConcurrentHashMap<String,Optional<String>>();
+
     /*package*/ MetaClass(WebApp webApp, Class clazz) {
         this.clazz = clazz;
         this.webApp = webApp;
@@ -60,18 +77,17 @@ public class MetaClass extends TearOffSupport {
     private void buildDispatchers( ClassDescriptor node ) {
         // check action <obj>.do<token>(...)
         for( final Function f : node.methods.prefix("do") ) {
-            WebMethod a = f.getAnnotation(WebMethod.class);
-            
-            String[] names;
-            if(a!=null && a.name().length>0)   names=a.name();
-            else    names=new String[]{camelize(f.getName().substring(2))}; // 'doFoo' -> 'foo'
+            String[] names = f.getWebMethodNames();
+            if(names==null || names.length==0)
+                names=new String[]{camelize(f.getName().substring(2))}; // 'doFoo' -> 'foo'
 
             for (String name : names) {
                 dispatchers.add(new NameBasedDispatcher(name,0) {
-                    public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IllegalAccessException, InvocationTargetException, ServletException, IOException {
+                    public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IllegalAccessException, InvocationTargetException, ServletException, IOException {
                         if(traceable())
                             trace(req,rsp,"-> <%s>.%s(...)",node,f.getName());
                         f.bindAndInvokeAndServeResponse(node, req, rsp);
+                        return true;
                     }
                     public String toString() {
                         return f.getQualifiedName()+"(...) for url=/"+name+"/...";
@@ -108,13 +124,14 @@ public class MetaClass extends TearOffSupport {
         for (final Field f : node.fields) {
             dispatchers.add(new NameBasedDispatcher(f.getName()) {
                 final String role = getProtectedRole(f);
-                public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException {
+                public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException {
                     if(role!=null && !req.isUserInRole(role))
                         throw new IllegalAccessException("Needs to be in role "+role);
 
                     if(traceable())
                         traceEval(req,rsp,node,f.getName());
                     req.getStapler().invoke(req, rsp, f.get(node));
+                    return true;
                 }
                 public String toString() {
                     return String.format("%1$s.%2$s for url=/%2$s/...",f.getDeclaringClass().getName(),f.getName());
@@ -129,19 +146,18 @@ public class MetaClass extends TearOffSupport {
             if(f.getName().length()<=3)
                 continue;
 
-            WebMethod a = f.getAnnotation(WebMethod.class);
-
-            String[] names;
-            if(a!=null && a.name().length>0)   names=a.name();
-            else    names=new String[]{camelize(f.getName().substring(3))}; // 'getFoo' -> 'foo'
+            String[] names = f.getWebMethodNames();
+            if(names==null || names.length==0)
+                names=new String[]{camelize(f.getName().substring(3))}; // 'getFoo' -> 'foo'
 
 
             for (String name : names) {
                 dispatchers.add(new NameBasedDispatcher(name) {
-                    public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
+                    public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
                         if(traceable())
                             traceEval(req,rsp,node,f.getName()+"()");
-                        req.getStapler().invoke(req,rsp, f.invoke(req, node));
+                        req.getStapler().invoke(req,rsp, f.invoke(req, node, Function.NO_ARGS));
+                        return true;
                     }
                     public String toString() {
                         return String.format("%1$s() for url=/%2$s/...",f.getQualifiedName(),name);
@@ -156,10 +172,11 @@ public class MetaClass extends TearOffSupport {
                 continue;
             String name = camelize(f.getName().substring(3)); // 'getFoo' -> 'foo'
             dispatchers.add(new NameBasedDispatcher(name) {
-                public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
+                public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
                     if(traceable())
                         traceEval(req,rsp,node,f.getName()+"(...)");
                     req.getStapler().invoke(req,rsp, f.invoke(req, node, req));
+                    return true;
                 }
                 public String toString() {
                     return String.format("%1$s(StaplerRequest) for url=/%2$s/...",f.getQualifiedName(),name);
@@ -173,11 +190,12 @@ public class MetaClass extends TearOffSupport {
                 continue;
             String name = camelize(f.getName().substring(3)); // 'getFoo' -> 'foo'
             dispatchers.add(new NameBasedDispatcher(name,1) {
-                public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
+                public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
                     String token = req.tokens.next();
                     if(traceable())
                         traceEval(req,rsp,node,f.getName()+"(\""+token+"\")");
                     req.getStapler().invoke(req,rsp, f.invoke(req,node,token));
+                    return true;
                 }
                 public String toString() {
                     return String.format("%1$s(String) for url=/%2$s/TOKEN/...",f.getQualifiedName(),name);
@@ -191,11 +209,14 @@ public class MetaClass extends TearOffSupport {
                 continue;
             String name = camelize(f.getName().substring(3)); // 'getFoo' -> 'foo'
             dispatchers.add(new NameBasedDispatcher(name,1) {
-                public void doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
-                    int idx = req.tokens.nextAsInt();
+                public boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException, IllegalAccessException, InvocationTargetException {
+                    Integer idx = req.tokens.tryNextAsInt();
+                    if(idx==null)
+                        return false;   // not a number. try next
                     if(traceable())
                         traceEval(req,rsp,node,f.getName()+"("+idx+")");
                     req.getStapler().invoke(req,rsp, f.invoke(req,node,idx));
+                    return true;
                 }
                 public String toString() {
                     return String.format("%1$s(int) for url=/%2$s/N/...",f.getQualifiedName(),name);
@@ -208,15 +229,13 @@ public class MetaClass extends TearOffSupport {
                 public boolean dispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException {
                     if(!req.tokens.hasMore())
                         return false;
-                    try {
-                        int index = req.tokens.nextAsInt();
-                        if(traceable())
-                            traceEval(req,rsp,node,"((Object[])",")["+index+"]");
-                        req.getStapler().invoke(req,rsp, ((Object[]) node)[index]);
-                        return true;
-                    } catch (NumberFormatException e) {
+                    Integer index = req.tokens.tryNextAsInt();
+                    if(index==null)
                         return false; // try next
-                    }
+                    if(traceable())
+                        traceEval(req,rsp,node,"((Object[])",")["+index+"]");
+                    req.getStapler().invoke(req,rsp, ((Object[]) node)[index]);
+                    return true;
                 }
                 public String toString() {
                     return "Array look-up for url=/N/...";
@@ -229,23 +248,21 @@ public class MetaClass extends TearOffSupport {
                 public boolean dispatch(RequestImpl req, ResponseImpl rsp, Object node) throws IOException, ServletException {
                     if(!req.tokens.hasMore())
                         return false;
-                    try {
-                        int index = req.tokens.nextAsInt();
-                        if(traceable())
-                            traceEval(req,rsp,node,"((List)",").get("+index+")");
-                        List list = (List) node;
-                        if (0<=index && index<list.size())
-                            req.getStapler().invoke(req,rsp, list.get(index));
-                        else {
-                            if(traceable())
-                                trace(req,rsp,"-> IndexOutOfRange [0,%d)",list.size());
-                            rsp.sendError(SC_NOT_FOUND);
-                        }
-
-                        return true;
-                    } catch (NumberFormatException e) {
+                    Integer index = req.tokens.tryNextAsInt();
+                    if(index==null)
                         return false; // try next
+                    if(traceable())
+                        traceEval(req,rsp,node,"((List)",").get("+index+")");
+                    List list = (List) node;
+                    if (0<=index && index<list.size())
+                        req.getStapler().invoke(req,rsp, list.get(index));
+                    else {
+                        if(traceable())
+                            trace(req,rsp,"-> IndexOutOfRange [0,%d)",list.size());
+                        rsp.sendError(SC_NOT_FOUND);
                     }
+
+                    return true;
                 }
                 public String toString() {
                     return "List.get(int) look-up for url=/N/...";
@@ -332,6 +349,135 @@ public class MetaClass extends TearOffSupport {
         }
     }
 
+    /**
+     * Returns {@link Dispatcher}s that can possibly handle the given token,
+     * in the order of preference.
+     *
+     * <p>
+     * This is a subset of {@link #dispatchers} that omits {@link NameBasedDispatcher}s
+     * for other names, so the result of trying them in order is the same as
+     * trying all the {@link #dispatchers}.
+     *
+     * @param token
+     *      The next token in the URL, or null if there's no more token.
+     */
+    /*package*/ List<Dispatcher> getDispatchers(String token) {
+        if(!INDEX_DISPATCHERS)
+            return dispatchers;
+
+        DispatcherIndex idx = index;
+        if(idx==null || idx.size!=dispatchers.size())
+            // build it for the first time, or rebuild it if someone modified the list
+            index = idx = new DispatcherIndex(dispatchers);
+        return idx.get(token);
+    }
+
+    /**
+     * Token -&gt; candidate {@link Dispatcher}s look-up table.
+     */
+    private static final class DispatcherIndex {
+        /**
+         * Size of the {@link MetaClass#dispatchers} that this index was built from.
+         */
+        final int size;
+        /**
+         * Dispatchers that are not bound to a specific name, such as facet views or {@code doDynamic}.
+         */
+        final List<Dispatcher> catchAll;
+        /**
+         * For each name, {@link NameBasedDispatcher}s of that name merged with {@link #catchAll},
+         * in the original order.
+         */
+        final Map<String,List<Dispatcher>> byName = new HashMap<String,List<Dispatcher>>();
+
+        DispatcherIndex(List<Dispatcher> dispatchers) {
+            Dispatcher[] all = dispatchers.toArray(new Dispatcher[dispatchers.size()]);
+            this.size = all.length;
+
+            Map<String,List<Dispatcher>> candidates = new HashMap<String,List<Dispatcher>>();
+            List<Dispatcher> wild = new ArrayList<Dispatcher>();
+            for (Dispatcher d : all) {
+                if (d instanceof NameBasedDispatcher) {
+                    String name = ((NameBasedDispatcher)d).name;
+                    if(!candidates.containsKey(name))
+                        candidates.put(name,new ArrayList<Dispatcher>());
+                } else {
+                    wild.add(d);
+                }
+            }
+
+            for (Dispatcher d : all) {
+                if (d instanceof NameBasedDispatcher) {
+                    candidates.get(((NameBasedDispatcher)d).name).add(d);
+                } else {
+                    for (List<Dispatcher> l : candidates.values())
+                        l.add(d);
+                }
+            }
+
+            this.catchAll = freeze(wild);
+            for (Map.Entry<String,List<Dispatcher>> e : candidates.entrySet())
+                byName.put(e.getKey(),freeze(e.getValue()));
+        }
+
+        List<Dispatcher> get(String token) {
+            if(token==null)     return catchAll;
+            List<Dispatcher> r = byName.get(token);
+            return r!=null ? r : catchAll;
+        }
+
+        private static List<Dispatcher> freeze(List<Dispatcher> l) {
+            return Collections.unmodifiableList(Arrays.asList(l.toArray(new Dispatcher[l.size()])));
+        }
+    }
+
+    /**
+     * Finds the side file of the given name, like "index.html" or "foo.jsp",
+     * by looking at <tt>/WEB-INF/side-files/<i>CLASSNAME</i>/</tt> of this class and its ancestors.
+     * Nested classes are looked up by both <tt>Outer/Inner</tt> and <tt>Outer$Inner</tt>.
+     *
+     * <p>
+     * The outcome is cached (unless {@link #NO_CACHE}) until {@link WebApp#clearScripts(Class)}.
+     *
+     * @return
+     *      The path of the resource in the {@link WebApp#context}, or null if not found.
+     */
+    public String findSideFile(String fileName) throws MalformedURLException {
+        if(NO_CACHE)
+            return lookupSideFile(fileName);
+
+        Optional<String> r = sideFiles.get(fileName);
+        if(r==null) {
+            r = Optional.create(lookupSideFile(fileName));
+            // file names come from URLs, so don't let bogus names fill up the memory
+            if(r.get()!=null || sideFiles.size()<MAX_NEGATIVE_SIDE_FILES)
+                sideFiles.put(fileName,r);
+        }
+        return r.get();
+    }
+
+    private String lookupSideFile(String fileName) throws MalformedURLException {
+        for( Class c = clazz; c!=Object.class && c!=null; c=c.getSuperclass() ) {
+            String dir = c.getName().replace('.','/');
+            String name = "/WEB-INF/side-files/"+dir.replace('$','/')+'/'+fileName;
+            if(webApp.context.getResource(name)!=null)
+                return name;
+            if(dir.indexOf('$')>=0) {
+                name = "/WEB-INF/side-files/"+dir+'/'+fileName;
+                if(webApp.context.getResource(name)!=null)
+                    return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards the side files resolved by {@link #findSideFile(String)}.
+     */
+    public void clearSideFiles() {
+        sideFiles.clear();
+    }
+
     private String getProtectedRole(Field f) {
         try {
             LimitedTo a = f.getAnnotation(LimitedTo.class);
@@ -351,6 +497,12 @@ public class MetaClass extends TearOffSupport {
      */
     public static boolean NO_CACHE = false;
 
+    /**
+     * Upper bound of the side file look up outcomes cached per class, beyond which
+     * only the files that are found get cached.
+     */
+    private static final int MAX_NEGATIVE_SIDE_FILES = 256;
+
     static {
         try {
             NO_CACHE = Boolean.getBoolean("stapler.jelly.noCache");
@@ -358,4 +510,20 @@ public class MetaClass extends TearOffSupport {
             // ignore.
         }
     }
+
+    /**
+     * Look up {@link #dispatchers} through a token-keyed index, instead of trying them all one by one.
+     * The outcome is the same either way; set the "stapler.dispatchers.noIndex" system property
+     * to compare against the linear scan.
+     */
+    public static boolean INDEX_DISPATCHERS = !Boolean.getBoolean("stapler.dispatchers.noIndex");
+
+    /**
+     * Read the route descriptors that {@link RouteDescriptorProcessor} generates, instead of parsing
+     * the annotations of every route method. Off by default, just like the processor, since looking for
+     * descriptors that aren't there costs a class loader look-up for every class.
+     * Set the "stapler.routes" system property to true when the application is compiled with
+     * <tt>-Astapler.routes=true</tt>.
+     */
+    public static boolean USE_ROUTE_DESCRIPTORS = Boolean.getBoolean("stapler.routes");
 }
@@ -1,8 +1,18 @@
 package org.kohsuke.stapler;
 
+import com.google.common.collect.MapMaker;
+
+import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URLClassLoader;
 import java.net.URL;
 import java.net.MalformedURLException;
@@ -17,23 +27,176 @@ public class MetaClassLoader extends TearOffSupport {
     public final MetaClassLoader parent;
     public final ClassLoader loader;
 
+    /**
+     * Resources looked up so far, keyed by their names. {@link Optional#none()} records the absence.
+     */
+    private final Map<String,Optional<ClassLoaderResource>> resources = new ConcurrentHashMap<String,Optional<ClassLoaderResource>>();
+
+    /**
+     * Jar files that {@link #resources} read from, keyed by their paths. Guarded by itself.
+     */
+    private final Map<String,OpenJar> jars = new HashMap<String,OpenJar>();
+
     public MetaClassLoader(ClassLoader loader) {
         this.loader = loader;
         this.parent = get(loader.getParent());
     }
 
+    /**
+     * Works like {@link ClassLoader#getResource(String)} but caches the outcome.
+     *
+     * @return
+     *      null if not found.
+     * @see #findResource(String)
+     */
+    public URL getResource(String name) {
+        if(MetaClass.NO_CACHE)
+            return loader.getResource(name);
+        ClassLoaderResource r = findResource(name);
+        return r!=null ? r.url : null;
+    }
+
+    /**
+     * Locates the resource and obtains its metadata.
+     *
+     * <p>
+     * The outcome, including the absence of the resource, is cached until {@link #clearResources()},
+     * so that frequently served resources, such as adjuncts, don't walk the class loader hierarchy
+     * and reopen jar files on every request. Jar files of the found resources are kept open until then.
+     *
+     * <p>
+     * A cached resource is looked up again once the file or the jar file it came from
+     * changes its size or timestamp, so that a rewritten jar file isn't read through the stale handle.
+     * The absence of a resource isn't revalidated.
+     *
+     * @return
+     *      null if not found.
+     */
+    public ClassLoaderResource findResource(String name) {
+        Optional<ClassLoaderResource> r = MetaClass.NO_CACHE ? null : resources.get(name);
+        if(r!=null && r.get()!=null && r.get().isModified())
+            r = null;   // look it up again. openJar() reopens the jar file
+        if(r==null) {
+            r = Optional.create(lookupResource(name));
+            // names often come from URLs, so don't let bogus names fill up the memory
+            if(!MetaClass.NO_CACHE && (r.get()!=null || resources.size()<MAX_NEGATIVE_RESOURCES))
+                resources.put(name,r);
+        }
+        return r.get();
+    }
+
+    private ClassLoaderResource lookupResource(String name) {
+        URL url = loader.getResource(name);
+        if(url==null)
+            return null;
+
+        try {
+            if(url.getProtocol().equals("file")) {
+                File f = new File(url.toURI());
+                long length = f.length(), lastModified = f.lastModified();
+                return new ClassLoaderResource(name,url,length,lastModified,f,length,lastModified);
+            }
+            if(url.getProtocol().equals("jar")) {
+                JarURLConnection con = (JarURLConnection)url.openConnection();
+                URL jarURL = con.getJarFileURL();
+                if(jarURL.getProtocol().equals("file")) {
+                    OpenJar jar = openJar(new File(jarURL.toURI()));
+                    JarEntry e = jar.jar.getJarEntry(con.getEntryName());
+                    if(e!=null)
+                        return ClassLoaderResource.create(name,url,jar.file,jar.jar,jar.length,jar.lastModified,e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to inspect "+url,e);
+        } catch (URISyntaxException e) {
+            LOGGER.log(Level.FINE, "Failed to inspect "+url,e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Failed to inspect "+url,e);  // URLs that aren't hierarchical
+        }
+
+        // we don't know how to make it faster, but at least we won't have to look it up again
+        return new ClassLoaderResource(name,url,-1,0);
+    }
+
+    /**
+     * Opens the jar file, or reuses the one already open unless the file has been rewritten since.
+     */
+    private OpenJar openJar(File f) throws IOException {
+        synchronized (jars) {
+            OpenJar jar = jars.get(f.getPath());
+            if(jar!=null && jar.isModified()) {
+                // resources still cached from the old one fall back to their original URLs, until they are looked up again
+                close(jar.jar);
+                jar = null;
+            }
+            if(jar==null)
+                jars.put(f.getPath(),jar=new OpenJar(f));
+            return jar;
+        }
+    }
+
+    private static void close(JarFile jar) {
+        try {
+            jar.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close "+jar.getName(),e);
+        }
+    }
+
+    /**
+     * Jar file kept open, along with the size and the timestamp of the file when it was opened.
+     */
+    private static final class OpenJar {
+        final File file;
+        final JarFile jar;
+        final long length, lastModified;
+
+        OpenJar(File file) throws IOException {
+            this.file = file;
+            // record them first, so that a change while opening is detected, not missed
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.jar = new JarFile(file);
+        }
+
+        boolean isModified() {
+            return file.lastModified()!=lastModified || file.length()!=length;
+        }
+    }
+
+    /**
+     * Discards the cached resources and closes the jar files kept open for them.
+     */
+    public void clearResources() {
+        resources.clear();
+        synchronized (jars) {
+            for (OpenJar jar : jars.values())
+                close(jar.jar);
+            jars.clear();
+        }
+    }
+
     public static MetaClassLoader get(ClassLoader cl) {
         if(cl ==null)
             return null; // if no parent, delegate to the debug loader if available.
         
-        synchronized(classMap) {
-            MetaClassLoader mc = classMap.get(cl);
-            if(mc==null) {
-                mc = new MetaClassLoader(cl);
-                classMap.put(cl,mc);
-            }
-            return mc;
-        }
+        return classMap.get(cl);
+    }
+
+    /**
+     * Forgets the {@link MetaClassLoader} of the given class loader, which the application is discarding,
+     * and releases the jar files it keeps open.
+     *
+     * <p>
+     * {@link Stapler#destroy()} calls this for the class loader of the application.
+     * Applications that drop other class loaders, such as those of plugins, need to call
+     * {@link WebApp#discard(ClassLoader)}, which calls this. Without this, the class loader is never garbage collected,
+     * and those jar files stay open, which prevents them from being deleted or replaced on some platforms.
+     */
+    public static void discard(ClassLoader cl) {
+        MetaClassLoader mcl = classMap.remove(cl);
+        if(mcl!=null)
+            mcl.clearResources();
     }
 
     /**
@@ -42,11 +205,26 @@ public class MetaClassLoader extends TearOffSupport {
     public static MetaClassLoader debugLoader = null;
 
     /**
-     * All {@link MetaClass}es.
+     * All {@link MetaClassLoader}s.
      *
-     * Avoids class leaks by {@link WeakHashMap}.
+     * <p>
+     * Look up is lock-free, and each {@link MetaClassLoader} is built exactly once.
+     * A live {@link MetaClassLoader} is never replaced by a second one that opens the same jar files again.
+     * Since {@link #loader} refers to its key, weak keys alone never let an entry go,
+     * so entries are removed by {@link #discard(ClassLoader)}, which closes their jar files.
      */
-    private static final Map<ClassLoader,MetaClassLoader> classMap = new WeakHashMap<ClassLoader,MetaClassLoader>();
+    private static final Map<ClassLoader,MetaClassLoader> classMap = new MapMaker().weakKeys().makeComputingMap(new com.google.common.base.Function<ClassLoader,MetaClassLoader>() {
+        public MetaClassLoader apply(ClassLoader cl) {
+            return new MetaClassLoader(cl);
+        }
+    });
+
+    /**
+     * Beyond this number of resources cached, missing ones are no longer remembered.
+     */
+    private static final int MAX_NEGATIVE_RESOURCES = 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(MetaClassLoader.class.getName());
 
     static {
         try {
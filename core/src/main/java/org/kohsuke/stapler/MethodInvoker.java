@@ -0,0 +1,65 @@
+package org.kohsuke.stapler;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Calls a {@link Method} on behalf of a {@link Function}.
+ *
+ * <p>
+ * One instance is created for each {@link Function} when {@link ClassDescriptor} is built,
+ * so whatever set-up cost is involved is paid once per method, not once per request.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+abstract class MethodInvoker {
+    /**
+     * Invokes the method.
+     *
+     * @param target
+     *      null for static methods.
+     */
+    abstract Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException;
+
+    /**
+     * Creates the fastest {@link MethodInvoker} available for the given method.
+     */
+    static MethodInvoker create(Method m) {
+        return new Reflective(m);
+    }
+
+    /**
+     * {@link Method#invoke(Object, Object[])}, with the access check suppressed where possible.
+     * This is the fallback that works everywhere.
+     */
+    static final class Reflective extends MethodInvoker {
+        private final Method m;
+
+        Reflective(Method m) {
+            this.m = m;
+            if(Modifier.isPublic(m.getModifiers()) && Modifier.isPublic(m.getDeclaringClass().getModifiers())) {
+                // the access check would pass anyway, so don't make Method.invoke repeat it on every call.
+                // this doesn't change what's accessible.
+                try {
+                    m.setAccessible(true);
+                } catch (SecurityException e) {
+                    LOGGER.log(Level.FINE, "Unable to suppress the access check on "+m,e);
+                }
+            }
+        }
+
+        Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException {
+            return m.invoke(target,args);
+        }
+
+        @Override
+        public String toString() {
+            return m.toString();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MethodInvoker.class.getName());
+}
@@ -27,10 +27,19 @@ abstract class NameBasedDispatcher extends Dispatcher {
         if(req.tokens.countRemainingTokens()<=argCount)
             return false;
         req.tokens.next();
-        doDispatch(req,rsp,node);
-        return true;
+        if(doDispatch(req,rsp,node))
+            return true;
+        req.tokens.prev();  // cancel the next effect
+        return false;
     }
 
-    protected abstract void doDispatch(RequestImpl req, ResponseImpl rsp, Object node)
+    /**
+     * Handles the request after the name token is consumed.
+     *
+     * @return
+     *      false if the rest of the URL turned out to be unsuitable for this dispatcher,
+     *      in which case the name token is put back and other dispatchers are tried.
+     */
+    protected abstract boolean doDispatch(RequestImpl req, ResponseImpl rsp, Object node)
         throws IOException, ServletException, IllegalAccessException, InvocationTargetException;
 }
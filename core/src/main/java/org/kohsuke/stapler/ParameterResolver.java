@@ -0,0 +1,45 @@
+package org.kohsuke.stapler;
+
+import javax.servlet.ServletException;
+
+/**
+ * Computes the value of one parameter of a {@link Function} from the current request.
+ *
+ * <p>
+ * {@link Function} prepares one of these for each of its parameters the first time
+ * it's invoked, so per-request binding doesn't need to look at the parameter types and
+ * annotations again.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see AnnotationHandler#prepare(java.lang.annotation.Annotation[], String, Class)
+ */
+abstract class ParameterResolver {
+    abstract Object resolve(StaplerRequest req, StaplerResponse rsp) throws ServletException;
+
+    /**
+     * Injects the request itself.
+     */
+    static final ParameterResolver REQUEST = new ParameterResolver() {
+        Object resolve(StaplerRequest req, StaplerResponse rsp) {
+            return req;
+        }
+    };
+
+    /**
+     * Injects the response itself.
+     */
+    static final ParameterResolver RESPONSE = new ParameterResolver() {
+        Object resolve(StaplerRequest req, StaplerResponse rsp) {
+            return rsp;
+        }
+    };
+
+    /**
+     * For parameters that we don't know how to fill in.
+     */
+    static final ParameterResolver NULL = new ParameterResolver() {
+        Object resolve(StaplerRequest req, StaplerResponse rsp) {
+            return null; // probably we should report an error
+        }
+    };
+}
@@ -0,0 +1,153 @@
+package org.kohsuke.stapler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Prepares gzip-compressed copies of static resources at the build time, such as "foo.js.gz" for "foo.js",
+ * so that {@link Stapler} can send them as they are, instead of compressing the resources on every request.
+ *
+ * <p>
+ * Text files (see {@link Stapler#TEXT_FILES}) under the given directories are compressed with
+ * the maximum compression level. Run this over the exploded webapp and the classes directory that contains
+ * the adjuncts before they are packaged, not over the source tree, for example with the exec-maven-plugin
+ * after the war plugin explodes the webapp:
+ *
+ * <pre>
+ * &lt;plugin>
+ *   &lt;groupId>org.apache.maven.plugins&lt;/groupId>
+ *   &lt;artifactId>maven-war-plugin&lt;/artifactId>
+ *   &lt;executions>
+ *     &lt;execution>
+ *       &lt;phase>prepare-package&lt;/phase>
+ *       &lt;goals>&lt;goal>exploded&lt;/goal>&lt;/goals>
+ *     &lt;/execution>
+ *   &lt;/executions>
+ * &lt;/plugin>
+ * &lt;plugin>
+ *   &lt;groupId>org.codehaus.mojo&lt;/groupId>
+ *   &lt;artifactId>exec-maven-plugin&lt;/artifactId>
+ *   &lt;executions>
+ *     &lt;execution>
+ *       &lt;phase>prepare-package&lt;/phase>
+ *       &lt;goals>&lt;goal>java&lt;/goal>&lt;/goals>
+ *       &lt;configuration>
+ *         &lt;mainClass>org.kohsuke.stapler.Precompressor&lt;/mainClass>
+ *         &lt;arguments>
+ *           &lt;argument>${project.build.directory}/${project.build.finalName}&lt;/argument>
+ *           &lt;argument>${project.build.outputDirectory}&lt;/argument>
+ *         &lt;/arguments>
+ *       &lt;/configuration>
+ *     &lt;/execution>
+ *   &lt;/executions>
+ * &lt;/plugin>
+ * </pre>
+ *
+ * <p>
+ * The compressed copy gets the same timestamp as the original. {@link Stapler} ignores
+ * copies older than the original, so a resource modified after the build is still served correctly.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class Precompressor {
+    /**
+     * Files smaller than this aren't worth compressing.
+     */
+    private final long minSize;
+
+    public Precompressor(long minSize) {
+        this.minSize = minSize;
+    }
+
+    public Precompressor() {
+        this(256);
+    }
+
+    /**
+     * Compresses all the text files in the given directory recursively.
+     *
+     * @return
+     *      the number of compressed copies written.
+     */
+    public int process(File dir) throws IOException {
+        File[] children = dir.listFiles();
+        if(children==null)
+            throw new IOException("Not a directory: "+dir);
+
+        int n=0;
+        for (File f : children) {
+            if(f.isDirectory())
+                n += process(f);
+            else
+            if(compress(f))
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the compressed copy of the given file, unless it's already up to date.
+     *
+     * @return
+     *      true if the compressed copy was written.
+     */
+    public boolean compress(File f) throws IOException {
+        String name = f.getName();
+        if(!Stapler.TEXT_FILES.contains(name.substring(name.lastIndexOf('.')+1)) || f.length()<minSize)
+            return false;
+
+        File gz = new File(f.getPath()+".gz");
+        if(gz.exists() && gz.lastModified()==f.lastModified())
+            return false;   // up to date
+
+        File tmp = new File(gz.getPath()+".tmp");
+        InputStream in = new FileInputStream(f);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp)) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            };
+            try {
+                byte[] buf = new byte[8192];
+                int len;
+                while((len=in.read(buf))>0)
+                    out.write(buf,0,len);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+
+        gz.delete();
+        if(tmp.length()>=f.length()) {
+            // not worth it. let the server send the original
+            tmp.delete();
+            return false;
+        }
+        if(!tmp.renameTo(gz))
+            throw new IOException("Failed to create "+gz);
+        gz.setLastModified(f.lastModified());
+        return true;
+    }
+
+    /**
+     * Compresses the directories given as the arguments.
+     */
+    public static void main(String[] args) throws IOException {
+        Precompressor p = new Precompressor();
+        for (String dir : args) {
+            File d = new File(dir);
+            if(!d.isDirectory())
+                continue;   // such as the webapp directory of a module that has none
+            System.out.println("Compressed "+p.process(d)+" files in "+d);
+        }
+    }
+}
@@ -58,7 +58,10 @@ public class RequestImpl extends HttpServletRequestWrapper implements StaplerReq
      */
     public final List<AncestorImpl> ancestors;
 
-    private final List<Ancestor> ancestorsView;
+    /**
+     * Read-only view of {@link #ancestors}, created on demand.
+     */
+    private List<Ancestor> ancestorsView;
 
     public final Stapler stapler;
 
@@ -80,7 +83,6 @@ public class RequestImpl extends HttpServletRequestWrapper implements StaplerReq
         super(request);
         this.stapler = stapler;
         this.ancestors = ancestors;
-        this.ancestorsView = Collections.<Ancestor>unmodifiableList(ancestors);
         this.tokens = tokens;
         this.originalRequestURI = request.getRequestURI();
     }
@@ -134,6 +136,8 @@ public class RequestImpl extends HttpServletRequestWrapper implements StaplerReq
     }
 
     public List<Ancestor> getAncestors() {
+        if(ancestorsView==null)
+            ancestorsView = Collections.<Ancestor>unmodifiableList(ancestors);
         return ancestorsView;
     }
 
@@ -0,0 +1,177 @@
+package org.kohsuke.stapler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Digests of the contents of static resources, used to build URLs like "/static/3f2a.../css/style.css".
+ *
+ * <p>
+ * Since such a URL changes whenever the contents of the resource changes, {@link Stapler} lets browsers
+ * cache it forever without ever revalidating, and a new deployment only invalidates resources that
+ * actually changed. A request whose fingerprint doesn't match the current contents (for example
+ * from a page rendered before the deployment) is still served, just without the immutable caching.
+ *
+ * <p>
+ * Digests are computed when a resource is first asked for, and kept until {@link #clear()}.
+ * A digest is computed again once the resource changes its size or timestamp, which for
+ * a resource in a jar file are those of the jar file, so that a resource changed in place
+ * never gets served under its old fingerprint.
+ * They are not used with {@link MetaClass#NO_CACHE}, where resources are expected to change.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see WebApp#resourceFingerprints
+ */
+public final class ResourceFingerprints {
+    /**
+     * Digests keyed by the URLs of the resources.
+     */
+    private final Map<String,Digest> digests = new ConcurrentHashMap<String,Digest>();
+
+    /**
+     * Obtains the fingerprint of the given resource.
+     *
+     * @return
+     *      null if the resource is null or can't be read, or if {@link MetaClass#NO_CACHE} is on.
+     */
+    public String get(URL resource) {
+        if(resource==null || MetaClass.NO_CACHE)
+            return null;
+        String key = resource.toString();
+        try {
+            File source = getSource(resource);
+            long length, lastModified;
+            if(source!=null) {
+                length = source.length();
+                lastModified = source.lastModified();
+            } else {
+                URLConnection con = resource.openConnection();
+                length = con.getContentLength();
+                lastModified = con.getLastModified();
+            }
+
+            Digest d = digests.get(key);
+            if(d==null || d.length!=length || d.lastModified!=lastModified) {
+                // the size and the timestamp are taken before reading, so that a change while reading is caught next time
+                d = new Digest(compute(resource),length,lastModified);
+                digests.put(key,d);
+            }
+            return d.value;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to fingerprint "+resource,e);
+            return null;
+        }
+    }
+
+    /**
+     * Can the given string be a fingerprint? Used to tell them from version strings
+     * that applications put in URLs, before digesting anything.
+     */
+    public static boolean isFingerprint(String s) {
+        if(s.length()!=LENGTH*2)
+            return false;
+        for (int i=0; i<s.length(); i++) {
+            char ch = s.charAt(i);
+            if(!('0'<=ch && ch<='9') && !('a'<=ch && ch<='f'))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the file that the resource is read from, which is the jar file for a resource in a jar file.
+     *
+     * @return
+     *      null if it's not a file.
+     */
+    private static File getSource(URL resource) {
+        String s = resource.toString();
+        if(s.startsWith("jar:")) {
+            int idx = s.indexOf("!/");
+            if(idx<0)
+                return null;
+            s = s.substring(4,idx);
+        }
+        if(!s.startsWith("file:"))
+            return null;
+        try {
+            return new File(new URL(s).toURI());
+        } catch (IOException e) {
+            return null;
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;    // URLs that aren't hierarchical
+        }
+    }
+
+    private static final class Digest {
+        final String value;
+        /**
+         * Size and timestamp of the resource when the digest was computed.
+         */
+        final long length, lastModified;
+
+        Digest(String value, long length, long lastModified) {
+            this.value = value;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Discards all the computed digests, for example after resources in the webapp are updated.
+     */
+    public void clear() {
+        digests.clear();
+    }
+
+    /**
+     * Computes the hex-encoded leading bytes of the SHA-1 digest of the contents.
+     */
+    static String compute(URL resource) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);    // every JRE has SHA-1
+        }
+
+        InputStream in = resource.openStream();
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>0)
+                md.update(buf,0,len);
+        } finally {
+            in.close();
+        }
+
+        byte[] digest = md.digest();
+        StringBuilder buf = new StringBuilder(LENGTH*2);
+        for (int i=0; i<LENGTH; i++) {
+            buf.append(HEX[(digest[i]>>4)&0xF]);
+            buf.append(HEX[digest[i]&0xF]);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Number of bytes of the digest used, which is plenty to tell versions of a resource apart.
+     */
+    private static final int LENGTH = 10;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceFingerprints.class.getName());
+}
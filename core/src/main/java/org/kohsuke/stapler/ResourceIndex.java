@@ -0,0 +1,137 @@
+package org.kohsuke.stapler;
+
+import javax.servlet.ServletContext;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Index of the static resources in the webapp, built at the start up.
+ *
+ * <p>
+ * Most requests are for the object graph, not for static resources, so this lets
+ * {@link Stapler} skip {@link ServletContext#getResource(String)} and the locale-specific
+ * {@link java.net.URLConnection}s for them, and select the locale variant of a static resource
+ * without trying to open them one by one.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class ResourceIndex {
+    /**
+     * Paths of all the files, like "/css/style.css", except those in {@link #EXCLUDED}.
+     */
+    private final Set<String> paths;
+
+    private ResourceIndex(Set<String> paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Number of indexed files.
+     */
+    int size() {
+        return paths.size();
+    }
+
+    /**
+     * Does this index know about the given path?
+     * Private directories of the webapp aren't indexed, as they are big and rarely served.
+     */
+    boolean covers(String path) {
+        for (String e : EXCLUDED)
+            if(path.regionMatches(true,0,e,0,e.length()))
+                return false;
+        return true;
+    }
+
+    /**
+     * Determines the file to be served for the given path.
+     * Follows the same rules as {@link Stapler#selectResourceByLocale(java.net.URL, Locale)}.
+     *
+     * @return
+     *      the path of the locale variant or the path itself if it exists, otherwise null.
+     */
+    String select(String path, Locale locale) {
+        String[] variants = getLocaleVariants(path,locale);
+        if(variants!=null)
+            for (String v : variants)
+                if(paths.contains(v))
+                    return v;
+        return paths.contains(path) ? path : null;
+    }
+
+    /**
+     * Lists the locale specific variants of the given resource in the order of preference,
+     * such as <tt>foo_ja_JP_xyz.html</tt>, <tt>foo_ja_JP.html</tt>, and <tt>foo_ja.html</tt> for <tt>foo.html</tt>.
+     *
+     * @return
+     *      null if the resource has no file extension, in which case no locale switch is available.
+     */
+    static String[] getLocaleVariants(String s, Locale locale) {
+        int idx = s.lastIndexOf('.');
+        if(idx<0)
+            return null;
+        String base = s.substring(0,idx);
+        String ext = s.substring(idx);
+        if(ext.indexOf('/')>=0) // the '.' we found was not an extension separator
+            return null;
+
+        return new String[] {
+            base+'_'+ locale.getLanguage()+'_'+ locale.getCountry()+'_'+ locale.getVariant()+ext,
+            base+'_'+ locale.getLanguage()+'_'+ locale.getCountry()+ext,
+            base+'_'+ locale.getLanguage()+ext
+        };
+    }
+
+    /**
+     * Builds the index by listing the contents of the webapp.
+     *
+     * @return
+     *      null if the container doesn't support listing, or the webapp is too large to index.
+     */
+    static ResourceIndex build(ServletContext context) {
+        Set<String> paths = new HashSet<String>();
+        try {
+            if(!list(context,"/",paths))
+                return null;
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to index static resources",e);
+            return null;
+        }
+        return new ResourceIndex(paths);
+    }
+
+    private static boolean list(ServletContext context, String dir, Set<String> paths) {
+        Set children = context.getResourcePaths(dir);
+        if(children==null)
+            return !dir.equals("/");    // the container can't list the webapp
+        for (Object o : children) {
+            String path = (String)o;
+            if(path.endsWith("/")) {
+                if(EXCLUDED.contains(path))
+                    continue;
+                if(!list(context,path,paths))
+                    return false;
+            } else {
+                if(paths.size()>=MAX_SIZE) {
+                    LOGGER.fine("Too many static resources to index");
+                    return false;
+                }
+                paths.add(path);
+            }
+        }
+        return true;
+    }
+
+    private static final Set<String> EXCLUDED = new HashSet<String>(Arrays.asList("/WEB-INF/","/META-INF/"));
+
+    /**
+     * Beyond this number of files, we'll just keep probing.
+     */
+    private static final int MAX_SIZE = 50000;
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceIndex.class.getName());
+}
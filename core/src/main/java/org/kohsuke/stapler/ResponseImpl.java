@@ -1,6 +1,7 @@
 package org.kohsuke.stapler;
 
 import org.kohsuke.stapler.export.Flavor;
+import org.kohsuke.stapler.export.TreeFilter;
 import org.kohsuke.stapler.export.Model;
 import org.kohsuke.stapler.export.ModelBuilder;
 import org.apache.commons.io.IOUtils;
@@ -37,6 +38,11 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
     enum OutputMode { BYTE, CHAR }
 
     private OutputMode mode=null;
+    /**
+     * Where {@link #getOutputStream()} or {@link #getWriter()} was first called.
+     * Only recorded when {@link #CAPTURE_CALL_SITE} is on, as filling in a stack trace
+     * on every request isn't cheap.
+     */
     private Throwable origin;
 
     public ResponseImpl(Stapler stapler, HttpServletResponse response) {
@@ -48,10 +54,11 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
         if(mode==OutputMode.CHAR)
-            throw new IllegalStateException("getWriter has already been called. Its call site is in the nested exception",origin);
+            throw alreadyCalled("getWriter");
         if(mode==null) {
             mode = OutputMode.BYTE;
-            origin = new Throwable();
+            if(CAPTURE_CALL_SITE)
+                origin = new Throwable();
         }
         return super.getOutputStream();
     }
@@ -59,14 +66,22 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
     @Override
     public PrintWriter getWriter() throws IOException {
         if(mode==OutputMode.BYTE)
-            throw new IllegalStateException("getOutputStream has already been called. Its call site is in the nested exception",origin);
+            throw alreadyCalled("getOutputStream");
         if(mode==null) {
             mode = OutputMode.CHAR;
-            origin = new Throwable();
+            if(CAPTURE_CALL_SITE)
+                origin = new Throwable();
         }
         return super.getWriter();
     }
 
+    private IllegalStateException alreadyCalled(String method) {
+        if(origin!=null)
+            return new IllegalStateException(method+" has already been called. Its call site is in the nested exception",origin);
+        else
+            return new IllegalStateException(method+" has already been called. Run with -Dstapler.captureCallSite=true to find out where");
+    }
+
     public void forward(Object it, String url, StaplerRequest request) throws ServletException, IOException {
         stapler.invoke(request,response,it,url);
     }
@@ -130,17 +145,8 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
     }
 
     public void serveExposedBean(StaplerRequest req, Object exposedBean, Flavor flavor) throws ServletException, IOException {
-        String pad=null;
-        PrintWriter w=null;
-
         setContentType(flavor.contentType);
 
-        if(flavor== Flavor.JSON) {
-            pad = req.getParameter("jsonp");
-            w = getWriter();
-            if(pad!=null) w.print(pad+'(');
-        }
-
         // use the depth query parameter to control the amount of data we send.
         int depth=0;
         try {
@@ -151,29 +157,89 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
             throw new ServletException("Depth parameter must be a number");
         }
 
+        // the tree query parameter picks the properties to write, such as "jobs[name,color]"
+        TreeFilter tree=null;
+        try {
+            String s = req.getParameter("tree");
+            if(s!=null)
+                tree = TreeFilter.parse(s);
+        } catch(IllegalArgumentException e) {
+            throw new ServletException("Malformed tree parameter: "+e.getMessage());
+        }
+
+        if(Stapler.isHead(req))
+            return; // the model is streamed without Content-Length, so there's nothing more to tell
+
         Model p = MODEL_BUILDER.get(exposedBean.getClass());
-        p.writeTo(exposedBean,depth,flavor.createDataWriter(exposedBean,this));
 
+        if(flavor== Flavor.JSON) {
+            // JSON is encoded to UTF-8 by the writer itself
+            OutputStream out = getOutputStream();
+            String pad = req.getParameter("jsonp");
+            if(pad!=null) out.write((pad+'(').getBytes("UTF-8"));
+            p.writeTo(exposedBean,tree,depth,flavor.createDataWriter(exposedBean,out));
+            if(pad!=null) out.write(')');
+            return;
+        }
 
-        if(pad!=null) w.print(')');
+        p.writeTo(exposedBean,tree,depth,flavor.createDataWriter(exposedBean,this));
     }
 
     public OutputStream getCompressedOutputStream(HttpServletRequest req) throws IOException {
-        String acceptEncoding = req.getHeader("Accept-Encoding");
-        if(acceptEncoding==null || acceptEncoding.indexOf("gzip")==-1)
-            return getOutputStream();   // compression not available
+        return getOutputStream(req,true);
+    }
 
-        addHeader("Content-Encoding","gzip");
+    public OutputStream getOutputStream(HttpServletRequest req, boolean compress) throws IOException {
+        if(compress)
+            setHeader("Vary","Accept-Encoding");    // whether it gets compressed or not
+        compress &= Stapler.acceptsGzip(req);
+        if(compress)
+            addHeader("Content-Encoding","gzip");
+        if(Stapler.isHead(req))
+            return new HeadOutputStream(this,!compress);
+        if(!compress)
+            return getOutputStream();   // compression not wanted or not available
         return new GZIPOutputStream(getOutputStream());
     }
 
     public Writer getCompressedWriter(HttpServletRequest req) throws IOException {
-        String acceptEncoding = req.getHeader("Accept-Encoding");
-        if(acceptEncoding==null || acceptEncoding.indexOf("gzip")==-1)
+        if(!Stapler.acceptsGzip(req) && !Stapler.isHead(req)) {
+            setHeader("Vary","Accept-Encoding");
             return getWriter();   // compression not available
+        }
+        return new OutputStreamWriter(getOutputStream(req,true),getCharacterEncoding());
+    }
+
+    /**
+     * Counts the bytes written in response to HEAD, instead of sending them.
+     */
+    private static final class HeadOutputStream extends OutputStream {
+        private final HttpServletResponse rsp;
+        /**
+         * If false, the count doesn't reflect what GET would send, such as when it's compressed.
+         */
+        private final boolean sendLength;
+        private long count;
+
+        HeadOutputStream(HttpServletResponse rsp, boolean sendLength) {
+            this.rsp = rsp;
+            this.sendLength = sendLength;
+        }
 
-        addHeader("Content-Encoding","gzip");
-        return new OutputStreamWriter(new GZIPOutputStream(getOutputStream()),getCharacterEncoding());
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            if(sendLength && count<=Integer.MAX_VALUE && !rsp.isCommitted())
+                rsp.setContentLength((int)count);
+        }
     }
 
     public int reverseProxyTo(URL url, StaplerRequest req) throws IOException {
@@ -258,5 +324,12 @@ public class ResponseImpl extends HttpServletResponseWrapper implements StaplerR
         return ch;
     }
 
-    private static final ModelBuilder MODEL_BUILDER = new ModelBuilder();
+    /*package*/ static final ModelBuilder MODEL_BUILDER = new ModelBuilder();
+
+    /**
+     * Records where {@link #getOutputStream()} or {@link #getWriter()} was first called,
+     * so that the error from calling the other one can point to it.
+     * Useful for debugging, but it costs a stack trace per request.
+     */
+    public static boolean CAPTURE_CALL_SITE = Boolean.getBoolean("stapler.captureCallSite");
 }
@@ -0,0 +1,234 @@
+package org.kohsuke.stapler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Route table of a class, generated at the build time by {@link RouteDescriptorProcessor}.
+ *
+ * <p>
+ * The descriptor lists public methods that can become URL routes (<tt>doXyz</tt> and <tt>getXyz</tt>)
+ * along with their {@link WebMethod} names and {@link LimitedTo} roles, so that {@link ClassDescriptor}
+ * doesn't have to parse annotations on every one of {@link Class#getMethods()}.
+ *
+ * <p>
+ * Descriptors are only read with {@link MetaClass#USE_ROUTE_DESCRIPTORS}.
+ * The methods still come from {@link Class#getMethods()}, so this saves the annotation parsing, not the reflection.
+ *
+ * <p>
+ * The file is a UTF-8 text file placed next to the class file. Each route starts with a
+ * "method" line, followed by indented attribute lines:
+ * <pre>
+ * method doFoo(org.kohsuke.stapler.StaplerRequest,org.kohsuke.stapler.StaplerResponse)
+ *  webMethod foo
+ *  limitedTo admin
+ * </pre>
+ *
+ * @author Kohsuke Kawaguchi
+ */
+final class RouteDescriptor {
+    private RouteDescriptor() {}
+
+    /**
+     * Extension of the descriptor file.
+     */
+    static final String SUFFIX = ".stapler-routes";
+
+    static final String METHOD = "method";
+    static final String WEB_METHOD = "webMethod";
+    static final String LIMITED_TO = "limitedTo";
+
+    /**
+     * Gets the resource name of the descriptor of the given class.
+     *
+     * @param binaryName
+     *      Binary name of the class, like <tt>org.acme.Foo$Bar</tt>.
+     */
+    static String getResourceName(String binaryName) {
+        return binaryName.replace('.','/').replace('$','/')+SUFFIX;
+    }
+
+    /**
+     * Can a method of this name become a route? Only these are recorded in the descriptor.
+     */
+    static boolean isRouteName(String methodName) {
+        return methodName.startsWith("do") || methodName.startsWith("get");
+    }
+
+    /**
+     * Builds {@link Function}s for all the route methods of the given class,
+     * to be used in place of parsing the annotations of every one of {@link Class#getMethods()}.
+     *
+     * <p>
+     * The methods still come from {@link Class#getMethods()}, so that inheritance, bridge methods,
+     * and interface default methods resolve exactly like they do with reflection. The descriptors only
+     * provide the annotations, and only for the methods they list.
+     *
+     * @return
+     *      null if any route method isn't listed in the descriptor of the class that declares it,
+     *      for example when the descriptor is missing or stale, in which case
+     *      the caller should fall back to reflection.
+     */
+    static List<Function> load(Class clazz) {
+        if(clazz.isInterface())
+            return null;
+
+        Map<Class,Map<String,Route>> descriptors = new HashMap<Class,Map<String,Route>>();
+        List<Function> functions = new ArrayList<Function>();
+        for (Method m : clazz.getMethods()) {
+            if(!isRouteName(m.getName()))
+                continue;
+            Class c = m.getDeclaringClass();
+            if(c==Object.class) {
+                functions.add(new Function.InstanceFunction(m,EMPTY_ARRAY));
+                continue;
+            }
+
+            Map<String,Route> routes = descriptors.get(c);
+            if(routes==null) {
+                routes = load(c,c.getClassLoader());
+                if(routes==null)
+                    return null;
+                descriptors.put(c,routes);
+            }
+
+            Route r = routes.get(getSignature(m));
+            if(r==null) {
+                LOGGER.fine("Route descriptor of "+c+" doesn't list "+m+". Falling back to reflection");
+                return null;
+            }
+            functions.add(new Function.InstanceFunction(m,r.getWebMethodNames()).protectBy(r.limitedTo));
+        }
+        return functions;
+    }
+
+    /**
+     * Loads the routes listed in the descriptor of the given class, keyed by their signatures.
+     *
+     * @return
+     *      null if there's no descriptor, or if it can't be read.
+     */
+    private static Map<String,Route> load(Class c, ClassLoader cl) {
+        if(cl==null)
+            return null;    // system classes don't have descriptors
+        URL url = cl.getResource(getResourceName(c.getName()));
+        if(url==null)
+            return null;
+
+        try {
+            Map<String,Route> routes = new HashMap<String,Route>();
+            for (Route r : parse(url))
+                routes.put(r.getSignature(),r);
+            return routes;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load "+url,e);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a descriptor file.
+     */
+    static List<Route> parse(URL url) throws IOException {
+        List<Route> routes = new ArrayList<Route>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(url.openStream(),"UTF-8"));
+        try {
+            Route route = null;
+            String line;
+            while((line=r.readLine())!=null) {
+                if(line.trim().length()==0 || line.startsWith("#"))
+                    continue;
+                boolean attribute = Character.isWhitespace(line.charAt(0));
+                line = line.trim();
+                int idx = line.indexOf(' ');
+                if(idx<0)
+                    throw new IOException("Malformed line: "+line);
+                String key = line.substring(0,idx);
+                String value = line.substring(idx+1).trim();
+
+                if(!attribute) {
+                    if(!key.equals(METHOD))
+                        throw new IOException("Unexpected line: "+line);
+                    routes.add(route = new Route(value));
+                } else {
+                    if(route==null)
+                        throw new IOException("Attribute without a method: "+line);
+                    if(key.equals(WEB_METHOD))
+                        route.webMethodNames.add(value);
+                    if(key.equals(LIMITED_TO))
+                        route.limitedTo = value;
+                    // ignore unknown attributes, for forward compatibility
+                }
+            }
+            return routes;
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Computes the signature string of a method in the format used in the descriptor.
+     */
+    static String getSignature(Method m) {
+        StringBuilder buf = new StringBuilder(m.getName()).append('(');
+        Class[] types = m.getParameterTypes();
+        for (int i=0; i<types.length; i++) {
+            if(i>0) buf.append(',');
+            buf.append(getTypeName(types[i]));
+        }
+        return buf.append(')').toString();
+    }
+
+    private static String getTypeName(Class t) {
+        if(t.isArray())
+            return getTypeName(t.getComponentType())+"[]";
+        return t.getName();
+    }
+
+    /**
+     * One route method in the descriptor.
+     */
+    static final class Route {
+        final String name;
+        /**
+         * Binary names of the erased parameter types, like "int", "java.lang.String[]" or "org.acme.Foo$Bar".
+         */
+        final String[] parameterTypes;
+        final List<String> webMethodNames = new ArrayList<String>();
+        String limitedTo;
+
+        Route(String signature) throws IOException {
+            int s = signature.indexOf('(');
+            if(s<=0 || !signature.endsWith(")"))
+                throw new IOException("Malformed signature: "+signature);
+            this.name = signature.substring(0,s);
+            String params = signature.substring(s+1,signature.length()-1);
+            this.parameterTypes = params.length()==0 ? EMPTY_ARRAY : params.split(",");
+        }
+
+        String getSignature() {
+            StringBuilder buf = new StringBuilder(name).append('(');
+            for (int i=0; i<parameterTypes.length; i++) {
+                if(i>0) buf.append(',');
+                buf.append(parameterTypes[i]);
+            }
+            return buf.append(')').toString();
+        }
+
+        String[] getWebMethodNames() {
+            return webMethodNames.toArray(new String[webMethodNames.size()]);
+        }
+    }
+
+    private static final String[] EMPTY_ARRAY = new String[0];
+    private static final Logger LOGGER = Logger.getLogger(RouteDescriptor.class.getName());
+}
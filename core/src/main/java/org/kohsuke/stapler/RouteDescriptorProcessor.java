@@ -0,0 +1,142 @@
+package org.kohsuke.stapler;
+
+import org.kohsuke.MetaInfServices;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates {@link RouteDescriptor} for every class being compiled,
+ * so that {@link MetaClass} doesn't have to discover routes reflectively at runtime.
+ *
+ * <p>
+ * This runs as a part of javac (JDK6 and later), and is never loaded at runtime.
+ * It's off unless <tt>-Astapler.routes=true</tt> is passed to javac, since otherwise it would write
+ * descriptors for every class of every project that merely has stapler on its classpath.
+ * For example, with the maven-compiler-plugin:
+ *
+ * <pre>
+ * &lt;configuration>
+ *   &lt;compilerArgument>-Astapler.routes=true&lt;/compilerArgument>
+ * &lt;/configuration>
+ * </pre>
+ *
+ * <p>
+ * The application then needs to run with the "stapler.routes" system property set to true
+ * for the descriptors to be read. See {@link MetaClass#USE_ROUTE_DESCRIPTORS}.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+@MetaInfServices(Processor.class)
+@SupportedAnnotationTypes("*")
+@SupportedOptions(RouteDescriptorProcessor.OPTION)
+public class RouteDescriptorProcessor extends AbstractProcessor {
+    static final String OPTION = "stapler.routes";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if(!"true".equals(processingEnv.getOptions().get(OPTION)))
+            return false;   // opt-in
+
+        for (TypeElement t : ElementFilter.typesIn(roundEnv.getRootElements()))
+            handleType(t);
+        return false;   // we don't claim any annotation
+    }
+
+    private void handleType(TypeElement t) {
+        // routes only exist on classes. enums and interfaces fall back to reflection.
+        if(t.getKind()==ElementKind.CLASS)
+            write(t);
+        for (TypeElement nested : ElementFilter.typesIn(t.getEnclosedElements()))
+            handleType(nested);
+    }
+
+    /**
+     * Writes the descriptor of the given class.
+     * This is done even if there's no route, so that subclasses can use their descriptors.
+     */
+    private void write(TypeElement t) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(t).toString();
+        try {
+            FileObject f = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT,
+                    "", RouteDescriptor.getResourceName(binaryName), t);
+            PrintWriter w = new PrintWriter(new OutputStreamWriter(f.openOutputStream(),"UTF-8"));
+            try {
+                w.println("# routes of "+binaryName+", generated by "+getClass().getName());
+                for (ExecutableElement m : ElementFilter.methodsIn(t.getEnclosedElements())) {
+                    if(!m.getModifiers().contains(Modifier.PUBLIC))
+                        continue;
+                    String name = m.getSimpleName().toString();
+                    if(!RouteDescriptor.isRouteName(name))
+                        continue;
+
+                    w.println(RouteDescriptor.METHOD+' '+getSignature(m));
+
+                    WebMethod wm = m.getAnnotation(WebMethod.class);
+                    if(wm!=null)
+                        for (String n : wm.name())
+                            w.println(' '+RouteDescriptor.WEB_METHOD+' '+n);
+
+                    LimitedTo lt = m.getAnnotation(LimitedTo.class);
+                    if(lt!=null)
+                        w.println(' '+RouteDescriptor.LIMITED_TO+' '+lt.value());
+                }
+            } finally {
+                w.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.WARNING,
+                    "Failed to write the route descriptor: "+e, t);
+        }
+    }
+
+    private String getSignature(ExecutableElement m) {
+        StringBuilder buf = new StringBuilder(m.getSimpleName()).append('(');
+        boolean first = true;
+        for (VariableElement p : m.getParameters()) {
+            if(!first)  buf.append(',');
+            first = false;
+            buf.append(getTypeName(processingEnv.getTypeUtils().erasure(p.asType())));
+        }
+        return buf.append(')').toString();
+    }
+
+    /**
+     * Gets the name of the erased type in the form {@link RouteDescriptor.Route#parameterTypes} uses.
+     */
+    private String getTypeName(TypeMirror t) {
+        switch (t.getKind()) {
+        case ARRAY:
+            return getTypeName(((ArrayType)t).getComponentType())+"[]";
+        case DECLARED:
+            return processingEnv.getElementUtils().getBinaryName((TypeElement)((DeclaredType)t).asElement()).toString();
+        default:
+            return t.toString();    // primitives
+        }
+    }
+}
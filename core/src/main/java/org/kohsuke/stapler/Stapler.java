@@ -22,28 +22,34 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.DataInputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -63,6 +69,22 @@ public class Stapler extends HttpServlet {
 
     private /*final*/ WebApp webApp;
 
+    /**
+     * Static resources in the webapp. Null if the container doesn't let us list them.
+     */
+    private /*final*/ ResourceIndex resourceIndex;
+
+    /**
+     * Resource paths (and locales) that turned out not to exist, when {@link #resourceIndex} isn't available.
+     */
+    private final Map<String,Boolean> missingResources = new ConcurrentHashMap<String,Boolean>();
+
+    /**
+     * URLs of the precompressed copies of static resources, keyed by the URLs of the resources.
+     * {@link Optional#none()} records that there's none.
+     */
+    private final Map<String,Optional<URL>> precompressed = new ConcurrentHashMap<String,Optional<URL>>();
+
     public @Override void init(ServletConfig servletConfig) throws ServletException {
         super.init(servletConfig);
         this.context = servletConfig.getServletContext();
@@ -76,6 +98,26 @@ public class Stapler extends HttpServlet {
                 webApp.defaultEncodingForStaticResources.put(t.substring(0,idx),t.substring(idx+1));
             }
         }
+        if(INDEX_STATIC_RESOURCES) {
+            resourceIndex = ResourceIndex.build(context);
+            if(resourceIndex!=null && LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Indexed "+resourceIndex.size()+" static resources");
+        }
+        if(Boolean.valueOf(servletConfig.getInitParameter("warm-up"))) {
+            // the root object is normally set by ServletContextListener, which runs before us
+            Object root = context.getAttribute("app");
+            if(root!=null)
+                webApp.warmUp(root);
+        }
+    }
+
+    /**
+     * The web application is going away along with its class loader,
+     * so let go of the {@link MetaClass}es and the jar files that {@link MetaClassLoader} keeps open for it.
+     */
+    public @Override void destroy() {
+        webApp.discard(webApp.getClassLoader());
+        super.destroy();
     }
 
     public WebApp getWebApp() {
@@ -90,6 +132,9 @@ public class Stapler extends HttpServlet {
 
         boolean staticLink = false;
 
+        // one wrapper serves both the static resource look up and the object graph traversal
+        ResponseImpl srsp = new ResponseImpl(this, rsp);
+
         if(servletPath.startsWith("/static/")) {
             // skip "/static/..../ portion
             int idx = servletPath.indexOf('/',8);
@@ -104,7 +149,7 @@ public class Stapler extends HttpServlet {
                 long expires = MetaClass.NO_CACHE ? 0 : 24L * 60 * 60 * 1000; /*1 day*/
                 if(staticLink)
                     expires*=365;   // static resources are unique, so we can set a long expiration date
-                if(serveStaticResource(req, new ResponseImpl(this, rsp), con, expires))
+                if(serveStaticResource(req, srsp, con, expires))
                     return; // done
             }
         }
@@ -113,8 +158,7 @@ public class Stapler extends HttpServlet {
         if(root==null)
             throw new ServletException("there's no \"app\" attribute in the application context.");
 
-        // consider reusing this ArrayList.
-        invoke( req, rsp, root, servletPath);
+        invoke( req, srsp, root, servletPath);
     }
 
     /**
@@ -138,12 +182,27 @@ public class Stapler extends HttpServlet {
      * Hence the need for this tuple.
      */
     private static final class OpenConnection {
+        final URL url;
         final URLConnection connection;
         final InputStream stream;
+        /**
+         * If non-null, the resource is served from {@link WebApp#staticResourceCache}
+         * and the other two fields are null.
+         */
+        final StaticResourceCache.Entry cached;
 
         private OpenConnection(URLConnection connection, InputStream stream) {
+            this.url = connection.getURL();
             this.connection = connection;
             this.stream = stream;
+            this.cached = null;
+        }
+
+        private OpenConnection(URL url, StaticResourceCache.Entry cached) {
+            this.url = url;
+            this.connection = null;
+            this.stream = null;
+            this.cached = cached;
         }
 
         private OpenConnection(URLConnection connection) throws IOException {
@@ -152,9 +211,27 @@ public class Stapler extends HttpServlet {
     }
 
     private OpenConnection openResourcePathByLocale(HttpServletRequest req,String resourcePath) throws IOException {
+        Locale locale = req.getLocale();
+        ResourceIndex index = resourceIndex;
+        if(index!=null && !MetaClass.NO_CACHE && index.covers(resourcePath)) {
+            String path = index.select(resourcePath,locale);
+            if(path==null)  return null;    // no need to probe
+            return openCachedURL(getServletContext().getResource(path));
+        }
+
+        // no index, so probe the container, remembering the misses
+        String key = resourcePath+'\n'+locale;
+        if(!MetaClass.NO_CACHE && missingResources.containsKey(key))
+            return null;
+
         URL url = getServletContext().getResource(resourcePath);
-        if(url==null)   return null;
-        return selectResourceByLocale(url,req.getLocale());
+        OpenConnection con = url!=null ? selectResourceByLocale(url,locale) : null;
+        if(con==null && !MetaClass.NO_CACHE) {
+            if(missingResources.size()>=MAX_MISSING_RESOURCES)
+                missingResources.clear();   // dynamic URLs are endless. start afresh to keep the recent ones
+            missingResources.put(key,Boolean.TRUE);
+        }
+        return con;
     }
 
     /**
@@ -166,24 +243,14 @@ public class Stapler extends HttpServlet {
      * So Japanese resource for <tt>foo.html</tt> would be named <tt>foo_ja.html</tt>.
      */
     OpenConnection selectResourceByLocale(URL url, Locale locale) throws IOException {
-        String s = url.toString();
-        int idx = s.lastIndexOf('.');
-        if(idx<0)   // no file extension, so no locale switch available
-            return openURL(url);
-        String base = s.substring(0,idx);
-        String ext = s.substring(idx);
-        if(ext.indexOf('/')>=0) // the '.' we found was not an extension separator
-            return openURL(url);
-
-        OpenConnection con;
-
-        // try locale specific resources first.
-        con = openURL(new URL(base+'_'+ locale.getLanguage()+'_'+ locale.getCountry()+'_'+ locale.getVariant()+ext));
-        if(con!=null)   return con;
-        con = openURL(new URL(base+'_'+ locale.getLanguage()+'_'+ locale.getCountry()+ext));
-        if(con!=null)   return con;
-        con = openURL(new URL(base+'_'+ locale.getLanguage()+ext));
-        if(con!=null)   return con;
+        String[] variants = ResourceIndex.getLocaleVariants(url.toString(),locale);
+        if(variants!=null) {
+            // try locale specific resources first.
+            for (String v : variants) {
+                OpenConnection con = openURL(new URL(v));
+                if(con!=null)   return con;
+            }
+        }
         // default
         return openURL(url);
     }
@@ -193,18 +260,218 @@ public class Stapler extends HttpServlet {
      */
     boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, OpenConnection con, long expiration) throws IOException {
         if(con==null)   return false;
-        return serveStaticResource(req,rsp, con.stream,
+        String etag = getFingerprintETag(req,con.url);
+        if(con.cached!=null)
+            return serveStaticResource(req,rsp,con.cached,expiration,etag);
+
+        String url = con.connection.getURL().toString();
+        long contentLength = getContentLength(con.connection);
+        String mimeType = getMimeType(url);
+        boolean compressible = isTextFile(url,mimeType);
+        StaticResourceCache cache = webApp.staticResourceCache;
+        if(contentLength<=Integer.MAX_VALUE && cache.accepts((int)contentLength)) {
+            OpenConnection gz = compressible ? openPrecompressed(con.connection) : null;
+            return serveStaticResource(req,rsp,
+                    cache.put(url,toFile(con.connection.getURL()),con.stream,gz!=null?gz.stream:null,con.connection.getLastModified(),mimeType,compressible),
+                    expiration,etag);
+        }
+
+        if(compressible && acceptsGzip(req) && req.getHeader("Range")==null) {
+            OpenConnection gz = openPrecompressed(con.connection);
+            if(gz!=null) {
+                con.stream.close();
+                return servePrecompressed(req,rsp,gz,con.connection.getLastModified(),expiration,mimeType,etag);
+            }
+        }
+
+        InputStream in = con.stream;
+        File f = toFile(con.connection.getURL());
+        if(f!=null) {
+            // reopen the file by ourselves, so that we can use its FileChannel
+            in.close();
+            try {
+                in = new FileInputStream(f);
+            } catch (FileNotFoundException e) {
+                return false;   // deleted in the mean time
+            }
+        }
+
+        return serveStaticResource(req,rsp, in,
                 con.connection.getLastModified(),
                 expiration,
-                con.connection.getContentLength(),
-                con.connection.getURL().toString());
+                contentLength,
+                url,
+                etag);
+    }
+
+    /**
+     * If the request is for the fingerprinted URL of the given resource (see {@link ResourceFingerprints}),
+     * like "/static/3f2a.../css/style.css", returns the strong entity tag for it.
+     *
+     * <p>
+     * The "/static/..." prefix has also been used with version strings that the application manages,
+     * and those keep getting the long expiration date without the rest of the treatment.
+     * The resource is only digested when the path segment looks like a fingerprint,
+     * so that those requests don't read the whole resource.
+     *
+     * @return
+     *      null if the URL doesn't carry the up-to-date fingerprint of the resource.
+     */
+    private String getFingerprintETag(HttpServletRequest req, URL resource) {
+        String uri = req.getRequestURI();
+        int idx = uri.indexOf("/static/");
+        if(idx<0)
+            return null;
+        String contextPath = req.getContextPath();
+        if(idx<contextPath.length()) {
+            // "/static/" was found in the context path
+            idx = uri.indexOf("/static/",contextPath.length());
+            if(idx<0)
+                return null;
+        }
+        idx += "/static/".length();
+        int end = uri.indexOf('/',idx);
+        if(end<0)
+            return null;
+
+        String fingerprint = uri.substring(idx,end);
+        if(!ResourceFingerprints.isFingerprint(fingerprint) || !fingerprint.equals(webApp.resourceFingerprints.get(resource)))
+            return null;
+        return '"'+fingerprint+'"';
+    }
+
+    /**
+     * Serves the gzip-compressed copy of a static resource, prepared in advance by {@link Precompressor}.
+     */
+    private boolean servePrecompressed(HttpServletRequest req, StaplerResponse rsp, OpenConnection gz, long lastModified, long expiration, String mimeType, String etag) throws IOException {
+        InputStream in = gz.stream;
+        try {
+            if(checkModified(req,rsp,lastModified,expiration,etag))
+                return true;
+
+            File f = toFile(gz.connection.getURL());
+            if(f!=null) {
+                // reopen the file by ourselves, so that we can use its FileChannel
+                in.close();
+                try {
+                    in = new FileInputStream(f);
+                } catch (FileNotFoundException e) {
+                    return false;   // deleted in the mean time
+                }
+            }
+            Content content = in instanceof FileInputStream
+                    ? new FileContent(((FileInputStream)in).getChannel())
+                    : new StreamContent(in,getContentLength(gz.connection));
+
+            rsp.setHeader("Accept-Ranges","bytes"); // advertize that we support the range header
+            rsp.setHeader("Vary","Accept-Encoding");
+            rsp.setHeader("Content-Encoding","gzip");
+            setETag(rsp,etag,true);
+            rsp.setContentType(mimeType);
+            if(content.length>=0)
+                setContentLength(rsp,content.length);
+            if(isHead(req))
+                return true;    // the headers are all the client wants
+            OutputStream out = rsp.getOutputStream();
+            content.writeTo(0,content.length,out);
+            out.close();
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens the "foo.js.gz" next to "foo.js", if it exists and is up to date.
+     * Whether the resource has one is looked up only once.
+     */
+    private OpenConnection openPrecompressed(URLConnection original) throws IOException {
+        String key = original.getURL().toString();
+        Optional<URL> r = MetaClass.NO_CACHE ? null : precompressed.get(key);
+        if(r==null) {
+            URL url;
+            try {
+                url = new URL(key+".gz");
+            } catch (MalformedURLException e) {
+                // a resource generated in memory, whose protocol is only known to its own handler
+                if(!MetaClass.NO_CACHE)
+                    precompressed.put(key,Optional.<URL>none());
+                return null;
+            }
+            OpenConnection con = openURL(url);
+            r = Optional.create(con!=null ? url : null);
+            if(!MetaClass.NO_CACHE)
+                precompressed.put(key,r);
+            return checkPrecompressed(original,con);
+        }
+        if(r.get()==null)
+            return null;
+        return checkPrecompressed(original,openURL(r.get()));
+    }
+
+    /**
+     * Rejects the compressed copy that's older than the resource itself.
+     */
+    private static OpenConnection checkPrecompressed(URLConnection original, OpenConnection gz) throws IOException {
+        if(gz!=null && gz.connection.getLastModified()<original.getLastModified()) {
+            gz.stream.close();
+            return null;
+        }
+        return gz;
     }
 
     /**
      * Serves the specified {@link URL} as a static resource.
      */
     boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, URL url, long expiration) throws IOException {
-        return serveStaticResource(req,rsp,openURL(url),expiration);
+        return serveStaticResource(req,rsp,openCachedURL(url),expiration);
+    }
+
+    /**
+     * Serves a static resource from {@link WebApp#staticResourceCache}.
+     */
+    private boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, StaticResourceCache.Entry e, long expiration, String etag) throws IOException {
+        if(e.gzipped!=null)
+            rsp.setHeader("Vary","Accept-Encoding");    // shared caches must not give the gzipped one to everyone
+        if(checkModified(req,rsp,e.lastModified,expiration,etag))
+            return true;
+
+        rsp.setHeader("Accept-Ranges","bytes"); // advertize that we support the range header
+
+        Content content = new ByteContent(e.data);
+        List<ByteRange> ranges = getRanges(req,content,e.lastModified,etag);
+        if(ranges!=null) {
+            setETag(rsp,etag,false);
+            sendRanges(req,rsp,content,ranges,e.mimeType);
+            return true;
+        }
+
+        rsp.setContentType(e.mimeType);
+        byte[] data = e.data;
+        boolean gzipped = e.gzipped!=null && acceptsGzip(req);
+        if(gzipped) {
+            rsp.setHeader("Content-Encoding","gzip");
+            data = e.gzipped;
+        }
+        setETag(rsp,etag,gzipped);
+
+        rsp.setContentLength(data.length);
+        if(isHead(req))
+            return true;    // the headers are all the client wants
+        OutputStream out = rsp.getOutputStream();
+        out.write(data);
+        out.close();
+        return true;
+    }
+
+    /**
+     * Works like {@link #openURL(URL)} but uses {@link WebApp#staticResourceCache} when possible.
+     */
+    private OpenConnection openCachedURL(URL url) throws IOException {
+        if(url==null)   return null;
+        StaticResourceCache.Entry e = webApp.staticResourceCache.get(url.toString());
+        if(e!=null)     return new OpenConnection(url,e);
+        return openURL(url);
     }
     
     /**
@@ -250,106 +517,430 @@ public class Stapler extends HttpServlet {
      * @return false
      *      if the resource doesn't exist.
      */
-    boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, InputStream in, long lastModified, long expiration, int contentLength, String fileName) throws IOException {
+    boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, InputStream in, long lastModified, long expiration, long contentLength, String fileName) throws IOException {
+        return serveStaticResource(req,rsp,in,lastModified,expiration,contentLength,fileName,null);
+    }
+
+    /**
+     * @param etag
+     *      Strong entity tag of the resource, or null if it has none.
+     */
+    private boolean serveStaticResource(HttpServletRequest req, StaplerResponse rsp, InputStream in, long lastModified, long expiration, long contentLength, String fileName, String etag) throws IOException {
         try {
-            {// send out Last-Modified, or check If-Modified-Since
-                if(lastModified!=0) {
-                    String since = req.getHeader("If-Modified-Since");
-                    SimpleDateFormat format = HTTP_DATE_FORMAT.get();
-                    if(since!=null) {
-                        try {
-                            long ims = format.parse(since).getTime();
-                            if(lastModified<ims+1000) {
-                                // +1000 because date header is second-precision and Java has milli-second precision
-                                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                                return true;
-                            }
-                        } catch (ParseException e) {
-                            // just ignore and serve the content
-                        } catch (NumberFormatException e) {
-                            // trying to locate a bug with Jetty
-                            getServletContext().log("Error parsing ["+since+"]",e);
-                            throw e;
-                        }
-                    }
-
-                    String lastModifiedStr = format.format(new Date(lastModified));
-                    rsp.setHeader("Last-Modified", lastModifiedStr);
-                    if(expiration<=0)
-                        rsp.setHeader("Expires",lastModifiedStr);
-                    else
-                        rsp.setHeader("Expires",format.format(new Date(new Date().getTime()+expiration)));
-                }
-            }
+            String mimeType = getMimeType(fileName);
+            boolean compressible = isTextFile(fileName,mimeType);
+            if(compressible)
+                rsp.setHeader("Vary","Accept-Encoding");    // shared caches must not give the gzipped one to everyone
+            if(checkModified(req,rsp,lastModified,expiration,etag))
+                return true;
 
             rsp.setHeader("Accept-Ranges","bytes"); // advertize that we support the range header
 
-            String mimeType = getMimeType(fileName);
-            rsp.setContentType(mimeType);
+            // files are sent straight from its channel
+            Content content = in instanceof FileInputStream
+                    ? new FileContent(((FileInputStream)in).getChannel())
+                    : new StreamContent(in,contentLength);
+
+            List<ByteRange> ranges = getRanges(req,content,lastModified,etag);
+            if(ranges!=null) {
+                setETag(rsp,etag,false);
+                sendRanges(req,rsp,content,ranges,mimeType);
+                return true;
+            }
 
-            int idx = fileName.lastIndexOf('.');
-            String ext = fileName.substring(idx+1);
+            rsp.setContentType(mimeType);
 
-            OutputStream out = null;
-            if(mimeType.startsWith("text/") || TEXT_FILES.contains(ext)) {
+            OutputStream out;
+            boolean gzipped = compressible && acceptsGzip(req);
+            setETag(rsp,etag,gzipped);
+            if(isHead(req)) {
+                // answer from what we know, without reading or compressing the content
+                if(gzipped)
+                    rsp.addHeader("Content-Encoding","gzip");
+                else
+                if(content.length>=0)
+                    setContentLength(rsp,content.length);
+                return true;
+            }
+            if(gzipped) {
                 // Need to duplicate this logic from ResponseImpl.getCompressedOutputStream,
                 // since we want to set content length if we are not using encoding.
-                String acceptEncoding = req.getHeader("Accept-Encoding");
-                if (acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1) {
-                    // with gzip compression, Content-Length header needs to indicate the # of bytes after compression,
-                    // so we can't compute it upfront.
-                    out = rsp.getCompressedOutputStream(req);
+                // with gzip compression, Content-Length header needs to indicate the # of bytes after compression,
+                // so we can't compute it upfront.
+                out = rsp.getCompressedOutputStream(req);
+            } else {
+                if(content.length>=0)
+                    setContentLength(rsp,content.length);
+                out = rsp.getOutputStream();
+            }
+            content.writeTo(0,content.length,out);
+            out.close();
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Determines the ranges to be sent in response to the Range header.
+     *
+     * @return
+     *      null to send the whole resource, which includes the case where the header isn't there,
+     *      is malformed, is conditional on a different version of the resource via If-Range,
+     *      or asks for the parts in an order that the content can't deliver.
+     *      Empty list if none of the requested ranges are satisfiable.
+     */
+    private List<ByteRange> getRanges(HttpServletRequest req, Content content, long lastModified, String etag) {
+        if(content.length<0)
+            return null;    // can't resolve ranges without knowing the length
+        String header = req.getHeader("Range");
+        if(header==null)
+            return null;
+        if(!isIfRangeSatisfied(req.getHeader("If-Range"),lastModified,etag))
+            return null;
+        List<ByteRange> ranges = ByteRange.parse(header,content.length);
+        if(ranges!=null && !content.isRandomAccess() && !ByteRange.isAscending(ranges))
+            return null;
+        return ranges;
+    }
+
+    /**
+     * Does the If-Range precondition allow us to send parts of the resource?
+     *
+     * @param ifRange
+     *      The value of the If-Range header, either an entity tag or an HTTP date.
+     * @param etag
+     *      Strong entity tag of the resource, or null if it has none.
+     */
+    private static boolean isIfRangeSatisfied(String ifRange, long lastModified, String etag) {
+        if(ifRange==null)
+            return true;
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+            return ifRange.equals(etag);    // strong comparison, so weak tags never match
+        if(lastModified==0)
+            return false;
+        try {
+            // the date header is second-precision, so the comparison has to be, too
+            return HTTP_DATE_FORMAT.get().parse(ifRange).getTime()/1000 == lastModified/1000;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends the partial response, or 416 if none of the ranges are satisfiable.
+     * Multiple ranges are sent as "multipart/byteranges".
+     */
+    private static void sendRanges(HttpServletRequest req, StaplerResponse rsp, Content content, List<ByteRange> ranges, String mimeType) throws IOException {
+        if(ranges.isEmpty()) {
+            rsp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            rsp.setHeader("Content-Range","bytes */"+content.length);
+            rsp.setContentLength(0);
+            return;
+        }
+
+        rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        if(ranges.size()==1) {
+            ByteRange r = ranges.get(0);
+            rsp.setHeader("Content-Range",r.toContentRange(content.length));
+            rsp.setContentType(mimeType);
+            setContentLength(rsp,r.length());
+            if(isHead(req))
+                return;
+            OutputStream out = rsp.getOutputStream();
+            content.writeTo(r.first,r.length(),out);
+            out.close();
+            return;
+        }
+
+        // compute the headers of all the parts upfront, so that we can send Content-Length
+        String boundary = Long.toHexString(BOUNDARY_GENERATOR.nextLong())+Long.toHexString(BOUNDARY_GENERATOR.nextLong());
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long length = 0;
+        for (int i=0; i<partHeaders.length; i++) {
+            ByteRange r = ranges.get(i);
+            partHeaders[i] = ("\r\n--"+boundary+"\r\n"
+                    +"Content-Type: "+mimeType+"\r\n"
+                    +"Content-Range: "+r.toContentRange(content.length)+"\r\n\r\n").getBytes("US-ASCII");
+            length += partHeaders[i].length + r.length();
+        }
+        byte[] trailer = ("\r\n--"+boundary+"--\r\n").getBytes("US-ASCII");
+        length += trailer.length;
+
+        rsp.setContentType("multipart/byteranges; boundary="+boundary);
+        setContentLength(rsp,length);
+        if(isHead(req))
+            return;
+        OutputStream out = rsp.getOutputStream();
+        for (int i=0; i<partHeaders.length; i++) {
+            ByteRange r = ranges.get(i);
+            out.write(partHeaders[i]);
+            content.writeTo(r.first,r.length(),out);
+        }
+        out.write(trailer);
+        out.close();
+    }
+
+    /**
+     * HEAD requests are answered with the headers of GET, without computing or sending the body.
+     */
+    /*package*/ static boolean isHead(HttpServletRequest req) {
+        return "HEAD".equals(req.getMethod());
+    }
+
+    /**
+     * Sets Content-Length, including the lengths that {@link HttpServletResponse#setContentLength(int)} can't take.
+     */
+    private static void setContentLength(HttpServletResponse rsp, long length) {
+        if(length<=Integer.MAX_VALUE)
+            rsp.setContentLength((int)length);
+        else
+            rsp.setHeader("Content-Length",String.valueOf(length));
+    }
+
+    /**
+     * {@link URLConnection#getContentLength()} that works beyond 2GB.
+     *
+     * @return -1 if unknown.
+     */
+    private static long getContentLength(URLConnection con) {
+        String s = con.getHeaderField("content-length");
+        if(s!=null) {
+            try {
+                return Long.parseLong(s.trim());
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        return con.getContentLength();
+    }
+
+    /**
+     * Bytes of a static resource, which can be sent in parts.
+     */
+    private static abstract class Content {
+        /**
+         * Number of bytes, or -1 if unknown.
+         */
+        final long length;
+
+        Content(long length) {
+            this.length = length;
+        }
+
+        /**
+         * Can the parts be sent in an arbitrary order?
+         * If false, {@link #writeTo(long, long, OutputStream)} needs to be called with increasing positions.
+         */
+        boolean isRandomAccess() {
+            return true;
+        }
+
+        /**
+         * Sends the given portion of the content.
+         *
+         * @param length
+         *      -1 to send everything from the position.
+         */
+        abstract void writeTo(long position, long length, OutputStream out) throws IOException;
+    }
+
+    private static final class ByteContent extends Content {
+        private final byte[] data;
+
+        ByteContent(byte[] data) {
+            super(data.length);
+            this.data = data;
+        }
+
+        void writeTo(long position, long length, OutputStream out) throws IOException {
+            out.write(data,(int)position,(int)(length<0 ? data.length-position : length));
+        }
+    }
+
+    private static final class FileContent extends Content {
+        private final FileChannel channel;
+
+        FileContent(FileChannel channel) throws IOException {
+            super(channel.size());
+            this.channel = channel;
+        }
+
+        void writeTo(long position, long length, OutputStream out) throws IOException {
+            transfer(channel,position,length<0 ? this.length-position : length,out);
+        }
+    }
+
+    /**
+     * Stream that can only be read forward, such as an entry in a jar file.
+     */
+    private static final class StreamContent extends Content {
+        private final InputStream in;
+        private long position;
+
+        StreamContent(InputStream in, long length) {
+            super(length);
+            this.in = in;
+        }
+
+        @Override
+        boolean isRandomAccess() {
+            return false;
+        }
+
+        void writeTo(long position, long length, OutputStream out) throws IOException {
+            while(this.position<position) {
+                long n = in.skip(position-this.position);
+                if(n<=0) {
+                    // some streams refuse to skip, so read and discard
+                    if(in.read()<0)
+                        throw new IOException("Unexpected end of stream at "+this.position);
+                    n = 1;
                 }
+                this.position += n;
             }
 
-            // somewhat limited implementation of the partial GET
-            String range = req.getHeader("Range");
-            if(range!=null && contentLength!=-1) {// I'm lazy and only implementing this for known content length case
-                if(range.startsWith("bytes=")) {
-                    range = range.substring(6);
-                    Matcher m = RANGE_SPEC.matcher(range);
-                    if(m.matches()) {
-                        int s = Integer.valueOf(m.group(1));
-                        int e = m.group(2).length()>0
-                                ? Integer.valueOf(m.group(2))+1 //range set is inclusive
-                                : contentLength; // unspecified value means "all the way to the end 
-                        e = Math.min(e,contentLength);
-
-                        // ritual for responding to a partial GET
-                        rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-                        rsp.setHeader("Content-Range",s+"-"+e+'/'+contentLength);
-
-                        // prepare to send the partial content
-                        new DataInputStream(in).skipBytes(s);
-                        in = new TruncatedInputStream(in,e-s);
-                        contentLength = Math.min(e-s,contentLength);
-                    }
-                    // if the Range header doesn't look like what we can handle,
-                    // pretend as if we didn't understand it, instead of doing a proper error reporting
+            byte[] buf = TRANSFER_BUFFER.get();
+            while(length!=0) {
+                int len = in.read(buf,0,length<0 ? buf.length : (int)Math.min(buf.length,length));
+                if(len<0) {
+                    if(length<0)    break;
+                    throw new IOException("Unexpected end of stream at "+this.position);
                 }
+                out.write(buf,0,len);
+                this.position += len;
+                if(length>0)    length -= len;
             }
+        }
+    }
 
-            if (out == null) {
-                if(contentLength!=-1)
-                    rsp.setContentLength(contentLength);
-                out = rsp.getOutputStream();
+    /**
+     * Sends a portion of the file to the output.
+     */
+    private static void transfer(FileChannel channel, long position, long length, OutputStream out) throws IOException {
+        if(out instanceof WritableByteChannel) {
+            // the container lets the file system send the data directly
+            WritableByteChannel target = (WritableByteChannel)out;
+            while(length>0) {
+                long n = channel.transferTo(position,length,target);
+                if(n<=0)    break;
+                position += n;
+                length -= n;
             }
+            return;
+        }
 
-            byte[] buf = new byte[1024];
-            int len;
-            while((len=in.read(buf))>0)
-                out.write(buf,0,len);
-            out.close();
-            return true;
-        } finally {
-            in.close();
+        // otherwise copy through a buffer that's large enough to keep the system calls to the minimum
+        byte[] buf = TRANSFER_BUFFER.get();
+        ByteBuffer bb = ByteBuffer.wrap(buf);
+        while(length>0) {
+            bb.clear();
+            if(length<buf.length)
+                bb.limit((int)length);
+            int n = channel.read(bb,position);
+            if(n<=0)    break;  // the file got truncated in the mean time
+            out.write(buf,0,n);
+            position += n;
+            length -= n;
         }
     }
 
     /**
-     * Strings like "5-300", "0-900", or "100-"
+     * Sends out Last-Modified and Expires, or responds to If-Modified-Since.
+     * For resources with entity tags, also responds to If-None-Match and marks the response immutable.
+     *
+     * @param etag
+     *      Strong entity tag of the resource, which is only given to the fingerprinted URLs.
+     * @return
+     *      true if the response is already sent because the client has the latest copy.
+     */
+    private boolean checkModified(HttpServletRequest req, StaplerResponse rsp, long lastModified, long expiration, String etag) {
+        if(etag!=null) {
+            // the contents of the URL never change
+            rsp.setHeader("Cache-Control","public, max-age="+IMMUTABLE_MAX_AGE+", immutable");
+            if(matchesETag(req.getHeader("If-None-Match"),etag)) {
+                setETag(rsp,etag,false);
+                rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+
+        if(lastModified==0)
+            return false;
+
+        // If-None-Match takes precedence, so If-Modified-Since is ignored along with it. see RFC 7232 section 6
+        String since = req.getHeader("If-None-Match")==null ? req.getHeader("If-Modified-Since") : null;
+        SimpleDateFormat format = HTTP_DATE_FORMAT.get();
+        if(since!=null) {
+            try {
+                long ims = format.parse(since).getTime();
+                if(lastModified<ims+1000) {
+                    // +1000 because date header is second-precision and Java has milli-second precision
+                    rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return true;
+                }
+            } catch (ParseException e) {
+                // just ignore and serve the content
+            } catch (NumberFormatException e) {
+                // trying to locate a bug with Jetty
+                getServletContext().log("Error parsing ["+since+"]",e);
+                throw e;
+            }
+        }
+
+        String lastModifiedStr = format.format(new Date(lastModified));
+        rsp.setHeader("Last-Modified", lastModifiedStr);
+        if(expiration<=0)
+            rsp.setHeader("Expires",lastModifiedStr);
+        else
+            rsp.setHeader("Expires",format.format(new Date(new Date().getTime()+expiration)));
+        return false;
+    }
+
+    /**
+     * Does the If-None-Match header list the given entity tag, including its compressed variant?
+     * Comparison is weak, as the spec mandates for this header.
      */
-    private static final Pattern RANGE_SPEC = Pattern.compile("([\\d]+)-([\\d]*)");
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if(ifNoneMatch==null)
+            return false;
+        String tag = etag.substring(1,etag.length()-1);
+        for (String t : ifNoneMatch.split(",")) {
+            t = t.trim();
+            if(t.startsWith("W/"))
+                t = t.substring(2);
+            if(t.equals("*") || t.equals(etag) || t.equals('"'+tag+GZIP_ETAG_SUFFIX+'"'))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends the entity tag, if any. The gzip-encoded representation has a different
+     * entity tag, since a strong entity tag identifies the exact bytes.
+     */
+    private static void setETag(HttpServletResponse rsp, String etag, boolean gzipped) {
+        if(etag==null)
+            return;
+        if(gzipped)
+            etag = etag.substring(0,etag.length()-1)+GZIP_ETAG_SUFFIX+'"';
+        rsp.setHeader("ETag",etag);
+    }
+
+    /**
+     * Is this a resource that's worth compressing?
+     */
+    private static boolean isTextFile(String fileName, String mimeType) {
+        int idx = fileName.lastIndexOf('.');
+        String ext = fileName.substring(idx+1);
+        return mimeType.startsWith("text/") || TEXT_FILES.contains(ext);
+    }
+
+    /*package*/ static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1;
+    }
 
     private String getMimeType(String fileName) {
         if(fileName.startsWith("mime-type:"))
@@ -396,11 +987,16 @@ public class Stapler extends HttpServlet {
      * Performs stapler processing on the given root object and request URL.
      */
     public void invoke(HttpServletRequest req, HttpServletResponse rsp, Object root, String url) throws IOException, ServletException {
-        RequestImpl sreq = new RequestImpl(this, req, new ArrayList<AncestorImpl>(), new TokenList(url));
+        invoke(req, new ResponseImpl(this, rsp), root, url);
+    }
+
+    private void invoke(HttpServletRequest req, ResponseImpl srsp, Object root, String url) throws IOException, ServletException {
+        TokenList tokens = new TokenList(url);
+        // typically one ancestor per token, plus the root
+        RequestImpl sreq = new RequestImpl(this, req, new ArrayList<AncestorImpl>(tokens.length()+1), tokens);
         RequestImpl oreq = CURRENT_REQUEST.get();
         CURRENT_REQUEST.set(sreq);
 
-        ResponseImpl srsp = new ResponseImpl(this, rsp);
         ResponseImpl orsp = CURRENT_RESPONSE.get();
         CURRENT_RESPONSE.set(srsp);
 
@@ -482,13 +1078,13 @@ public class Stapler extends HttpServlet {
                     return;
             }
 
-            URL indexHtml = getSideFileURL(node,"index.html");
+            URL indexHtml = getSideFileURL(metaClass,"index.html");
             if(indexHtml!=null && serveStaticResource(req,rsp,indexHtml,0))
                 return; // done
         }
 
         try {
-            for( Dispatcher d : metaClass.dispatchers ) {
+            for( Dispatcher d : metaClass.getDispatchers(req.tokens.peek()) ) {
                 if(d.dispatch(req,rsp,node)) {
                     if(LOGGER.isLoggable(Level.FINE))
                         LOGGER.fine("Handled by "+d);
@@ -568,13 +1164,9 @@ public class Stapler extends HttpServlet {
         dispatcher.forward(req,new ResponseImpl(this,rsp));
     }
 
-    private URL getSideFileURL(Object node,String fileName) throws MalformedURLException {
-        for( Class c = node.getClass(); c!=Object.class; c=c.getSuperclass() ) {
-            String name = "/WEB-INF/side-files/"+c.getName().replace('.','/')+'/'+fileName;
-            URL url = getServletContext().getResource(name);
-            if(url!=null) return url;
-        }
-        return null;
+    private URL getSideFileURL(MetaClass metaClass,String fileName) throws MalformedURLException {
+        String name = metaClass.findSideFile(fileName);
+        return name!=null ? getServletContext().getResource(name) : null;
     }
 
 
@@ -671,10 +1263,44 @@ public class Stapler extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(Stapler.class.getName());
 
+    /**
+     * Per-thread buffer used to send files, so that large downloads don't churn the heap.
+     */
+    private static final ThreadLocal<byte[]> TRANSFER_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[32*1024];
+        }
+    };
+
+    /**
+     * Max-age of the fingerprinted static resources in seconds, which is a year.
+     */
+    private static final long IMMUTABLE_MAX_AGE = 365L*24*60*60;
+
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+    /**
+     * Generates the boundaries of "multipart/byteranges" responses.
+     */
+    private static final Random BOUNDARY_GENERATOR = new Random();
+
+    /**
+     * Index the static resources in the webapp at the start up, instead of probing the container
+     * on every request. Set the "stapler.staticResources.noIndex" system property to disable this,
+     * for example when the contents of the webapp change while it's running.
+     */
+    public static boolean INDEX_STATIC_RESOURCES = !Boolean.getBoolean("stapler.staticResources.noIndex");
+
+    /**
+     * Upper bound of {@link #missingResources}.
+     */
+    private static final int MAX_MISSING_RESOURCES = 1024;
+
     /**
      * Extensions that look like text files.
      */
-    private static final Set<String> TEXT_FILES = new HashSet<String>(Arrays.asList(
+    /*package*/ static final Set<String> TEXT_FILES = new HashSet<String>(Arrays.asList(
         "css","js","html","txt","java","htm","c","cpp","h","rb","pl","py","xml"
     ));
 
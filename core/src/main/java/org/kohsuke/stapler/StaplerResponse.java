@@ -1,6 +1,7 @@
 package org.kohsuke.stapler;
 
 import org.kohsuke.stapler.export.Flavor;
+import org.kohsuke.stapler.export.TreeFilter;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
@@ -125,6 +126,8 @@ public interface StaplerResponse extends HttpServletResponse {
      * <p>
      * This method performs the complete output from the header to the response body.
      * If the flavor is JSON, this method also supports JSONP via the 'jsonp' query parameter.
+     * The 'depth' query parameter controls how deep the object tree is written, and the 'tree' query parameter
+     * picks the properties to be written, such as "jobs[name,builds[number]]". See {@link TreeFilter}.
      */
     void serveExposedBean(StaplerRequest req, Object exposedBean, Flavor flavor) throws ServletException,IOException;
 
@@ -135,14 +138,30 @@ public interface StaplerResponse extends HttpServletResponse {
      * <p>
      * This method is useful for sending out a large text content.
      *
+     * <p>
+     * In response to HEAD, the headers are set just like GET, but the body is discarded.
+     * "Vary: Accept-Encoding" is sent whether the response gets compressed or not, so that shared caches
+     * don't give the compressed response to clients that can't read it.
+     *
      * @param req
      *      Used to determine whether the client supports compression
      */
     OutputStream getCompressedOutputStream(HttpServletRequest req) throws IOException;
 
+    /**
+     * Works like {@link #getCompressedOutputStream(HttpServletRequest)} if {@code compress} is true,
+     * or like {@link #getOutputStream()} otherwise, except that the body of the response to HEAD is discarded
+     * in either case. If the body isn't compressed, its length is sent as Content-Length instead.
+     *
+     * <p>
+     * This is for those who render the response to HEAD just for the headers GET would send.
+     */
+    OutputStream getOutputStream(HttpServletRequest req, boolean compress) throws IOException;
+
     /**
      * Works like {@link #getCompressedOutputStream(HttpServletRequest)} but this
      * method is for {@link #getWriter()}.
+     * In response to HEAD, the headers are set just like GET, but the body is discarded.
      */
     Writer getCompressedWriter(HttpServletRequest req) throws IOException;
 
@@ -0,0 +1,287 @@
+package org.kohsuke.stapler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory cache of small static resources, such as CSS and JavaScript files in the webapp
+ * and adjuncts in jar files, so that they can be served without opening {@link java.net.URLConnection}s
+ * or compressing them on every request.
+ *
+ * <p>
+ * Entries are keyed by the URL of the resource, and evicted roughly in the least-recently-used order
+ * once the total size exceeds the budget. Look ups don't take a lock, since every static resource
+ * request goes through here.
+ *
+ * <p>
+ * A resource read from a file is dropped once the timestamp of the file changes.
+ * Other resources, such as those in jar files, are assumed not to change while the webapp is running.
+ * {@link MetaClass#NO_CACHE} bypasses this cache, and {@link #clear()} discards everything.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see WebApp#staticResourceCache
+ */
+public final class StaticResourceCache {
+    /**
+     * Cached representation of one static resource.
+     */
+    static final class Entry {
+        final byte[] data;
+        /**
+         * Gzip-compressed {@link #data}, or null if it's not worth compressing.
+         */
+        final byte[] gzipped;
+        final long lastModified;
+        final String mimeType;
+        /**
+         * File that {@link #data} was read from, or null if it's not a file, and its timestamp at that time.
+         */
+        private final File file;
+        private final long fileLastModified;
+        /**
+         * Value of {@link StaticResourceCache#clock} when this entry was last used.
+         * Updated without synchronization, as it's only a hint for the eviction.
+         */
+        private long lastUsed;
+
+        Entry(byte[] data, byte[] gzipped, long lastModified, String mimeType, File file, long fileLastModified) {
+            this.data = data;
+            this.gzipped = gzipped;
+            this.lastModified = lastModified;
+            this.mimeType = mimeType;
+            this.file = file;
+            this.fileLastModified = fileLastModified;
+        }
+
+        int size() {
+            return data.length + (gzipped!=null ? gzipped.length : 0);
+        }
+
+        boolean isModified() {
+            return file!=null && file.lastModified()!=fileLastModified;
+        }
+    }
+
+    private final long capacity;
+    private final int maxEntrySize;
+
+    private final Map<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+    /**
+     * Total size of {@link #entries}. Guarded by {@code this}, like all the updates of {@link #entries}.
+     */
+    private long size;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+    /**
+     * Ticks every time an entry is used, to tell which ones are used least recently.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * @param capacity
+     *      Total number of bytes this cache can hold, including the compressed copies. 0 to disable.
+     * @param maxEntrySize
+     *      Resources bigger than this many bytes aren't cached.
+     */
+    public StaticResourceCache(long capacity, int maxEntrySize) {
+        this.capacity = capacity;
+        this.maxEntrySize = (int)Math.min(maxEntrySize,capacity);
+    }
+
+    /**
+     * Can a resource of the given length be cached?
+     *
+     * @param contentLength
+     *      -1 if unknown, in which case the resource won't be cached.
+     */
+    boolean accepts(int contentLength) {
+        return !MetaClass.NO_CACHE && capacity>0 && contentLength>=0 && contentLength<=maxEntrySize;
+    }
+
+    Entry get(String url) {
+        if(MetaClass.NO_CACHE)
+            return null;
+        Entry e = entries.get(url);
+        if(e!=null && e.isModified()) {
+            remove(url,e);
+            e = null;
+        }
+        if(e!=null) {
+            e.lastUsed = clock.incrementAndGet();
+            hits.incrementAndGet();
+        } else
+            misses.incrementAndGet();
+        return e;
+    }
+
+    private synchronized void remove(String url, Entry e) {
+        if(entries.get(url)==e) {
+            entries.remove(url);
+            size -= e.size();
+        }
+    }
+
+    /**
+     * Reads the resource and caches it.
+     *
+     * @param in
+     *      The resource to be read. This method closes it.
+     * @param compress
+     *      True to keep a gzip-compressed copy along with it.
+     * @return
+     *      The entry, which the caller can use to serve the resource even if it didn't fit into the cache.
+     */
+    Entry put(String url, InputStream in, long lastModified, String mimeType, boolean compress) throws IOException {
+        return put(url,null,in,null,lastModified,mimeType,compress);
+    }
+
+    /**
+     * Reads the resource and caches it.
+     *
+     * @param file
+     *      If the resource is read from a file, that file, so that the entry is dropped once it changes.
+     * @param precompressed
+     *      If non-null, the gzip-compressed copy of the resource prepared in advance,
+     *      which is used instead of compressing the resource. This method closes it.
+     */
+    Entry put(String url, File file, InputStream in, InputStream precompressed, long lastModified, String mimeType, boolean compress) throws IOException {
+        long fileLastModified = file!=null ? file.lastModified() : 0;   // before reading, so that a change while reading isn't missed
+        byte[] data, gzipped = null;
+        try {
+            data = readFully(in);
+            if(precompressed!=null)
+                gzipped = readFully(precompressed);
+        } finally {
+            in.close();
+            if(precompressed!=null)
+                precompressed.close();
+        }
+
+        if(gzipped==null && compress) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(data.length/2);
+            GZIPOutputStream gz = new GZIPOutputStream(buf);
+            gz.write(data);
+            gz.close();
+            if(buf.size()<data.length)
+                gzipped = buf.toByteArray();
+        }
+
+        Entry e = new Entry(data,gzipped,lastModified,mimeType,file,fileLastModified);
+        e.lastUsed = clock.incrementAndGet();
+        if(e.size()<=capacity) {
+            synchronized (this) {
+                Entry old = entries.put(url,e);
+                if(old!=null)   size -= old.size();
+                size += e.size();
+                evict();
+            }
+        }
+        return e;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int len;
+        while((len=in.read(chunk))>0)
+            buf.write(chunk,0,len);
+        return buf.toByteArray();
+    }
+
+    /**
+     * Evicts the least recently used entries until everything fits.
+     * This sorts all the entries, but it only happens when a resource is added to a full cache.
+     */
+    private void evict() {
+        if(size<=capacity)
+            return;
+        // Entry.lastUsed keeps changing, so sort a snapshot of it
+        List<Candidate> all = new ArrayList<Candidate>(entries.size());
+        for (Map.Entry<String,Entry> e : entries.entrySet())
+            all.add(new Candidate(e.getKey(),e.getValue()));
+        Collections.sort(all);
+        for (int i=0; size>capacity && i<all.size(); i++) {
+            entries.remove(all.get(i).url);
+            size -= all.get(i).entry.size();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+        final String url;
+        final Entry entry;
+        final long lastUsed;
+
+        Candidate(String url, Entry entry) {
+            this.url = url;
+            this.entry = entry;
+            this.lastUsed = entry.lastUsed;
+        }
+
+        public int compareTo(Candidate that) {
+            return lastUsed<that.lastUsed ? -1 : lastUsed==that.lastUsed ? 0 : 1;
+        }
+    }
+
+    /**
+     * Discards all the cached resources, for example after changing {@link WebApp#mimeTypes}.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Number of resources in the cache.
+     */
+    public int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Number of bytes held by the cache.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("StaticResourceCache[%d entries, %d/%d bytes, %d hits, %d misses, %d evictions]",
+                entries.size(),size,capacity,hits.get(),misses.get(),evictions.get());
+    }
+
+    /**
+     * Creates a cache configured by the "stapler.staticResourceCache.size" and
+     * "stapler.staticResourceCache.maxEntrySize" system properties, in bytes.
+     */
+    static StaticResourceCache create() {
+        return new StaticResourceCache(
+                Long.getLong("stapler.staticResourceCache.size",16*1024*1024),
+                Integer.getInteger("stapler.staticResourceCache.maxEntrySize",256*1024));
+    }
+}
@@ -22,9 +22,20 @@ public abstract class TearOffSupport {
         return (T)m.get(t);
     }
 
+    /**
+     * Obtains the tear-off of the given type, creating it if necessary.
+     *
+     * <p>
+     * The look up of an existing tear-off doesn't lock, and the tear-off
+     * is created only once even if multiple threads ask for it at the same time.
+     */
     public final <T> T loadTearOff(Class<T> t) {
         T o = getTearOff(t);
-        if(o==null) {
+        if(o!=null)     return o;
+
+        synchronized (this) {
+            o = getTearOff(t);  // one more check before we create it
+            if(o!=null)     return o;
             try {
                 o = t.getConstructor(getClass()).newInstance(this);
                 setTearOff(t,o);
@@ -42,8 +53,8 @@ public abstract class TearOffSupport {
             } catch (NoSuchMethodException e) {
                 throw new NoSuchMethodError(e.getMessage());
             }
+            return o;
         }
-        return o;
     }
 
     public synchronized <T> void setTearOff(Class<T> type, T instance) {
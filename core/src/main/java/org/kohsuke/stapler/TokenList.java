@@ -1,63 +1,159 @@
 package org.kohsuke.stapler;
 
-import java.util.StringTokenizer;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 
 /**
  * Tokenized strings.
  *
+ * <p>
+ * Tokens are kept as offsets into the original URL, and they are
+ * decoded only when someone actually looks at them.
+ *
  * @author Kohsuke Kawaguchi
  */
 public final class TokenList {
-    public final String[] tokens, rawTokens;
+    /**
+     * The URL that was tokenized, before decoding.
+     */
+    private final String url;
+    /**
+     * Start and end (exclusive) offsets of each token in {@link #url}.
+     * The i-th token is at {@code [offsets[2i],offsets[2i+1])}.
+     */
+    private final int[] offsets;
+    /**
+     * Decoded tokens, filled on demand.
+     */
+    private String[] decoded;
     /**
      * Index of the next token.
      */
     public int idx;
 
     TokenList(String url) {
-        StringTokenizer tknzr = new StringTokenizer(url,"/");
-        tokens = new String[tknzr.countTokens()];
-        rawTokens = new String[tknzr.countTokens()];
-        for(int i=0; tknzr.hasMoreTokens(); i++) {
-            rawTokens[i] = tknzr.nextToken();
-            tokens[i] = decode(rawTokens[i]);
+        this.url = url;
+
+        // same tokenization as StringTokenizer(url,"/"), which skips empty tokens
+        int len = url.length();
+        int n = 0;
+        for( int i=0; i<len; i++ )
+            if(url.charAt(i)!='/' && (i==0 || url.charAt(i-1)=='/'))
+                n++;
+
+        offsets = new int[n*2];
+        int j=0;
+        for( int i=0; i<len; ) {
+            if(url.charAt(i)=='/') {
+                i++;
+                continue;
+            }
+            int e = url.indexOf('/',i);
+            if(e<0) e=len;
+            offsets[j++] = i;
+            offsets[j++] = e;
+            i = e;
         }
     }
 
     public boolean hasMore() {
-        return tokens.length!=idx;
+        return length()!=idx;
     }
 
     public String peek() {
         if(hasMore())
-            return tokens[idx];
+            return get(idx);
         else
             return null;
     }
 
     public String next() {
-        return tokens[idx++];
+        return get(idx++);
     }
     public String prev() {
-        return tokens[--idx];
+        return get(--idx);
     }
     public int nextAsInt() throws NumberFormatException {
         String p = peek();
         if(p==null)
             throw new NumberFormatException();  // no more token
-        int i = Integer.valueOf(p);
+        Integer i = parseInt(p);
+        if(i==null)
+            throw new NumberFormatException("For input string: \""+p+'"');
         idx++;
         return i;
     }
 
+    /**
+     * Works like {@link #nextAsInt()}, except that this method returns null
+     * (and doesn't consume the token) instead of throwing {@link NumberFormatException}
+     * if the next token is not a number.
+     */
+    public Integer tryNextAsInt() {
+        String p = peek();
+        if(p==null)
+            return null;
+        Integer i = parseInt(p);
+        if(i!=null)
+            idx++;
+        return i;
+    }
+
     public int length() {
-        return tokens.length;
+        return offsets.length/2;
     }
 
+    /**
+     * Gets the i-th token, decoded.
+     */
     public String get(int i) {
-        return tokens[i];
+        if(i<0 || i>=length())
+            throw new ArrayIndexOutOfBoundsException(i);
+        if(decoded==null)
+            decoded = new String[length()];
+        String s = decoded[i];
+        if(s==null)
+            decoded[i] = s = decode(getRaw(i));
+        return s;
+    }
+
+    /**
+     * Gets the i-th token, as it appears in the original URL.
+     */
+    public String getRaw(int i) {
+        if(i<0 || i>=length())
+            throw new ArrayIndexOutOfBoundsException(i);
+        return url.substring(offsets[i*2],offsets[i*2+1]);
+    }
+
+    /**
+     * All the tokens, decoded. This used to be the {@code tokens} field.
+     *
+     * @deprecated
+     *      Decodes all the tokens and copies them into a new array.
+     *      Use {@link #get(int)} and {@link #length()}.
+     */
+    @Deprecated
+    public String[] getTokens() {
+        String[] r = new String[length()];
+        for( int i=0; i<r.length; i++ )
+            r[i] = get(i);
+        return r;
+    }
+
+    /**
+     * All the tokens, as they appear in the original URL. This used to be the {@code rawTokens} field.
+     *
+     * @deprecated
+     *      Copies all the tokens into a new array.
+     *      Use {@link #getRaw(int)} and {@link #length()}.
+     */
+    @Deprecated
+    public String[] getRawTokens() {
+        String[] r = new String[length()];
+        for( int i=0; i<r.length; i++ )
+            r[i] = getRaw(i);
+        return r;
     }
 
     public int countRemainingTokens() {
@@ -67,29 +163,55 @@ public final class TokenList {
 
     public String toString() {
         StringBuilder buf = new StringBuilder();
-        for( int i=0; i<tokens.length; i++) {
+        for( int i=0; i<length(); i++) {
             if(buf.length()>0)  buf.append('/');
             if(i==idx)  buf.append('!');
-            buf.append(tokens[i]);
+            buf.append(get(i));
         }
         return buf.toString();
     }
 
-    private String assembleRestOfPath(String[] tokens) {
+    public String assembleRestOfPath() {
         StringBuilder buf = new StringBuilder();
         for( int i=idx; i<length(); i++ ) {
             buf.append('/');
-            buf.append(tokens[i]);
+            buf.append(get(i));
         }
         return buf.toString();
     }
 
-    public String assembleRestOfPath() {
-        return assembleRestOfPath(tokens);
+    public String assembleOriginalRestOfPath() {
+        StringBuilder buf = new StringBuilder();
+        for( int i=idx; i<length(); i++ ) {
+            buf.append('/');
+            buf.append(url,offsets[i*2],offsets[i*2+1]);
+        }
+        return buf.toString();
     }
 
-    public String assembleOriginalRestOfPath() {
-        return assembleRestOfPath(rawTokens);
+    /**
+     * Parses a string like {@link Integer#parseInt(String)} does,
+     * but returns null instead of throwing an exception if it's not a number.
+     */
+    private static Integer parseInt(String s) {
+        int len = s.length();
+        int i = 0;
+        boolean negative = false;
+        if(len>0 && s.charAt(0)=='-') {
+            negative = true;
+            i++;
+        }
+        if(i==len)  return null;
+
+        long limit = negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long r = 0;
+        for( ; i<len; i++ ) {
+            int d = Character.digit(s.charAt(i),10);
+            if(d<0)     return null;
+            r = r*10+d;
+            if(r>limit) return null;
+        }
+        return (int)(negative ? -r : r);
     }
 
     public static String decode(String s) {
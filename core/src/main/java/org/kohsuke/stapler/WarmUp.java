@@ -0,0 +1,263 @@
+package org.kohsuke.stapler;
+
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Model;
+import org.kohsuke.stapler.export.Property;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background warm-up of a {@link WebApp}, started by {@link WebApp#warmUp(Object)}.
+ *
+ * <p>
+ * Starting from the type of the root object, this walks the types reachable by URL
+ * (return types of getters and types of public fields) and by the remote API
+ * ({@link ExportedBean exported} properties), and for each of them builds {@link MetaClass},
+ * {@link Model}, and the views that {@link Facet}s know about, so that the first requests
+ * after the start up don't have to pay for them.
+ *
+ * <p>
+ * Each type is processed as a separate task, so they run in parallel on the given executor.
+ * Types loaded by the bootstrap classloader (such as {@link String}) are not visited.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public final class WarmUp {
+    private final WebApp webApp;
+    private final ExecutorService executor;
+    /**
+     * If true, {@link #executor} is created just for us, and gets shut down at the end.
+     */
+    private final boolean ownExecutor;
+
+    /**
+     * Types that have been scheduled. Cleared at the end so as not to pin classes.
+     */
+    private final Map<Class,Boolean> visited = new ConcurrentHashMap<Class,Boolean>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final AtomicLong metaClassTime = new AtomicLong();
+    private final AtomicLong modelTime = new AtomicLong();
+    private final AtomicLong viewTime = new AtomicLong();
+
+    private final long startTime = System.nanoTime();
+    private volatile long endTime;
+    private volatile boolean cancelled;
+
+    /*package*/ WarmUp(WebApp webApp, Class root, ExecutorService executor, boolean ownExecutor) {
+        this.webApp = webApp;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+
+        pending.incrementAndGet();  // so that we won't finish before the root is scheduled
+        schedule(root);
+        taskDone();
+    }
+
+    /**
+     * Number of types that have been warmed up so far.
+     */
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Number of types that are discovered but not yet warmed up.
+     */
+    public int getPendingCount() {
+        return Math.max(0,pending.get());
+    }
+
+    /**
+     * Number of types that failed to warm up. Those will be simply handled on demand.
+     */
+    public int getFailureCount() {
+        return failed.get();
+    }
+
+    public boolean isDone() {
+        return done.getCount()==0;
+    }
+
+    /**
+     * Milliseconds since the warm-up has started, or the total time it took if it's done.
+     */
+    public long getElapsedTime() {
+        long end = isDone() ? endTime : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end-startTime);
+    }
+
+    /**
+     * Milliseconds spent in building {@link MetaClass}es, summed up across threads.
+     */
+    public long getMetaClassTime() {
+        return TimeUnit.NANOSECONDS.toMillis(metaClassTime.get());
+    }
+
+    /**
+     * Milliseconds spent in building {@link Model}s, summed up across threads.
+     */
+    public long getModelTime() {
+        return TimeUnit.NANOSECONDS.toMillis(modelTime.get());
+    }
+
+    /**
+     * Milliseconds spent in loading views, summed up across threads.
+     */
+    public long getViewTime() {
+        return TimeUnit.NANOSECONDS.toMillis(viewTime.get());
+    }
+
+    /**
+     * Waits for the warm-up to complete.
+     */
+    public void join() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Waits for the warm-up to complete, up to the given time.
+     *
+     * @return true if the warm-up is complete.
+     */
+    public boolean join(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout,unit);
+    }
+
+    /**
+     * Stops scheduling further work. Tasks that are already running will complete.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WarmUp[%s: %d done, %d pending, %d failed in %dms (MetaClass %dms, Model %dms, views %dms)]",
+                isDone() ? "done" : "running", getCompletedCount(), getPendingCount(), getFailureCount(),
+                getElapsedTime(), getMetaClassTime(), getModelTime(), getViewTime());
+    }
+
+    private void schedule(Type t) {
+        Class c = toClass(t);
+        if(c==null || cancelled)
+            return;
+        if(c.isPrimitive() || c.getClassLoader()==null)
+            return;     // nothing to warm up in JDK classes
+        if(visited.put(c,Boolean.TRUE)!=null)
+            return;
+
+        final Class clazz = c;
+        pending.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if(!cancelled)
+                            warmUp(clazz);
+                        completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failed(clazz,e);
+                    } catch (LinkageError e) {
+                        failed(clazz,e);
+                    } finally {
+                        taskDone();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failed(clazz,e);
+            taskDone();
+        }
+    }
+
+    private void failed(Class c, Throwable t) {
+        failed.incrementAndGet();
+        LOGGER.log(Level.FINE, "Failed to warm up "+c,t);
+    }
+
+    private void taskDone() {
+        if(pending.decrementAndGet()==0) {
+            endTime = System.nanoTime();
+            visited.clear();
+            if(ownExecutor)
+                executor.shutdown();
+            done.countDown();
+            LOGGER.fine(toString());
+        }
+    }
+
+    /**
+     * Warms up one type, then schedules types reachable from it.
+     */
+    private void warmUp(Class c) {
+        long start = System.nanoTime();
+        MetaClass mc = webApp.getMetaClass(c);
+        long t = System.nanoTime();
+        metaClassTime.addAndGet(t-start);
+
+        for (Facet f : webApp.facets)
+            f.warmUp(mc);
+        start = t;
+        t = System.nanoTime();
+        viewTime.addAndGet(t-start);
+
+        if(c.getAnnotation(ExportedBean.class)!=null) {
+            Model<?> model = ResponseImpl.MODEL_BUILDER.get(c);
+            modelTime.addAndGet(System.nanoTime()-t);
+            for (Model<?> m=model; m!=null; m=m.superModel)
+                for (Property p : m.getProperties())
+                    scheduleAll(p.getGenericType());
+        }
+
+        // types reachable by URL. See MetaClass.buildDispatchers
+        for (Method m : c.getMethods())
+            if(m.getName().startsWith("get") && m.getParameterTypes().length<=1)
+                scheduleAll(m.getGenericReturnType());
+        for (Field f : c.getFields())
+            scheduleAll(f.getGenericType());
+    }
+
+    /**
+     * Schedules the given type and, for generic types like {@code List<Foo>}, its type arguments.
+     */
+    private void scheduleAll(Type t) {
+        schedule(t);
+        if(t instanceof ParameterizedType)
+            for (Type a : ((ParameterizedType)t).getActualTypeArguments())
+                scheduleAll(a);
+        if(t instanceof GenericArrayType)
+            scheduleAll(((GenericArrayType)t).getGenericComponentType());
+    }
+
+    private static Class toClass(Type t) {
+        if(t instanceof ParameterizedType)
+            t = ((ParameterizedType)t).getRawType();
+        if(!(t instanceof Class))
+            return null;    // type variables and wildcards
+        Class c = (Class)t;
+        while(c.isArray())
+            c = c.getComponentType();
+        return c;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(WarmUp.class.getName());
+}
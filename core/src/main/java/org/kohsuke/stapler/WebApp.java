@@ -1,14 +1,20 @@
 package org.kohsuke.stapler;
 
+import com.google.common.collect.MapMaker;
 import net.sf.json.JSONObject;
 
 import javax.servlet.ServletContext;
+import java.net.MalformedURLException;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
-import java.util.WeakHashMap;
-import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Object scoped to the entire webapp. Mostly used for configuring behavior of Stapler.
@@ -58,8 +64,9 @@ public class WebApp {
      * Activated facets.
      *
      * TODO: is this really mutable?
+     * This is iterated on every request but rarely modified, hence copy-on-write.
      */
-    public final List<Facet> facets = new Vector<Facet>();
+    public final List<Facet> facets = new CopyOnWriteArrayList<Facet>();
 
     /**
      * MIME type mapping from extensions (like "txt" or "jpg") to MIME types ("foo/bar").
@@ -67,16 +74,35 @@ public class WebApp {
      * This overrides whatever mappings given in the servlet as far as stapler is concerned.
      * This is case insensitive, and should be normalized to lower case.
      */
-    public final Map<String,String> mimeTypes = new Hashtable<String,String>();
+    public final Map<String,String> mimeTypes = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Small static resources served by {@link Stapler}, kept in memory.
+     */
+    public final StaticResourceCache staticResourceCache = StaticResourceCache.create();
+
+    /**
+     * Fingerprints of static resources, for {@link #getStaticResourcePath(String)}.
+     */
+    public final ResourceFingerprints resourceFingerprints = new ResourceFingerprints();
 
     private volatile ClassLoader classLoader;
 
     /**
      * All {@link MetaClass}es.
      *
-     * Avoids class leaks by {@link WeakHashMap}.
+     * <p>
+     * Look up is lock-free, and each {@link MetaClass} is built exactly once.
+     * A live {@link MetaClass} must not be evicted, as other {@link MetaClass}es refer to it
+     * through {@link MetaClass#baseClass}, and a rebuilt one would lose the compiled tear-offs.
+     * Since {@link MetaClass#clazz} refers to its key, weak keys alone never let an entry go,
+     * so the entries of a discarded class loader are removed by {@link #discard(ClassLoader)}.
      */
-    private final Map<Class,MetaClass> classMap = new WeakHashMap<Class,MetaClass>();
+    private final Map<Class,MetaClass> classMap = new MapMaker().weakKeys().makeComputingMap(new com.google.common.base.Function<Class,MetaClass>() {
+        public MetaClass apply(Class c) {
+            return new MetaClass(WebApp.this,c);
+        }
+    });
 
     public WebApp(ServletContext context) {
         this.context = context;
@@ -105,6 +131,10 @@ public class WebApp {
 
     /**
      * Sets the classloader used by {@link StaplerRequest#bindJSON(Class, JSONObject)} and its sibling methods.
+     *
+     * <p>
+     * The class loader that this replaces may still be in use elsewhere, so it's left alone.
+     * Call {@link #discard(ClassLoader)} once it's known to be dead.
      */
     public void setClassLoader(ClassLoader classLoader) {
         this.classLoader = classLoader;
@@ -112,14 +142,63 @@ public class WebApp {
 
     public MetaClass getMetaClass(Class c) {
         if(c==null)     return null;
-        synchronized(classMap) {
-            MetaClass mc = classMap.get(c);
-            if(mc==null) {
-                mc = new MetaClass(this,c);
-                classMap.put(c,mc);
+        return classMap.get(c);
+    }
+
+    /**
+     * Forgets the {@link MetaClass}es of the classes that the given class loader defined, including
+     * their subclasses, as well as its {@link MetaClassLoader}, so that the class loader can be garbage collected.
+     *
+     * <p>
+     * Applications that drop a class loader, such as that of a plugin, need to call this.
+     * The caller must be sure that the class loader is no longer used, as this closes the jar files
+     * that {@link MetaClassLoader} keeps open for it.
+     *
+     * @see MetaClassLoader#discard(ClassLoader)
+     */
+    public void discard(ClassLoader cl) {
+        for (Iterator<MetaClass> itr = classMap.values().iterator(); itr.hasNext();) {
+            for (MetaClass mc = itr.next(); mc!=null; mc=mc.baseClass) {
+                if(mc.clazz.getClassLoader()==cl) {
+                    itr.remove();
+                    break;
+                }
             }
-            return mc;
         }
+        MetaClassLoader.discard(cl);
+    }
+
+    /**
+     * Starts building {@link MetaClass}es, exported bean models, and views of the types reachable
+     * from the given root object in the background, so that the first requests after the start up
+     * don't have to.
+     *
+     * <p>
+     * This uses a thread pool sized to the number of processors, which goes away when the warm-up is done.
+     *
+     * @return
+     *      Handle to monitor the progress.
+     */
+    public WarmUp warmUp(Object root) {
+        final AtomicInteger n = new AtomicInteger();
+        ExecutorService es = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Stapler warm-up #"+n.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                t.setContextClassLoader(getClassLoader());
+                return t;
+            }
+        });
+        return new WarmUp(this,root.getClass(),es,true);
+    }
+
+    /**
+     * Same as {@link #warmUp(Object)}, except the work is submitted to the given executor,
+     * such as a work-stealing pool.
+     */
+    public WarmUp warmUp(Class root, ExecutorService executor) {
+        return new WarmUp(this,root,executor,false);
     }
 
     /**
@@ -132,13 +211,36 @@ public class WebApp {
      * @see MetaClass#NO_CACHE
      */
     public void clearScripts(Class<? extends AbstractTearOff> clazz) {
-        synchronized (classMap) {
-            for (MetaClass v : classMap.values()) {
-                AbstractTearOff t = v.getTearOff(clazz);
-                if (t!=null)
-                    t.clearScripts();
-            }
+        for (MetaClass v : classMap.values()) {
+            v.clearSideFiles();
+            AbstractTearOff t = v.getTearOff(clazz);
+            if (t!=null)
+                t.clearScripts();
+        }
+    }
+
+    /**
+     * Computes the path that serves the given resource in the webapp with the content fingerprint,
+     * like "/static/3f2a.../css/style.css" for "/css/style.css". Browsers are allowed to cache such
+     * a path forever, as it changes whenever the resource changes.
+     *
+     * @param path
+     *      Path of the resource in the webapp that starts with '/'.
+     * @return
+     *      The path relative to the context path of the webapp.
+     *      The given path as is if the resource doesn't exist or can't be fingerprinted.
+     * @see ResourceFingerprints
+     */
+    public String getStaticResourcePath(String path) {
+        String fingerprint;
+        try {
+            fingerprint = resourceFingerprints.get(context.getResource(path));
+        } catch (MalformedURLException e) {
+            return path;
         }
+        if(fingerprint==null)
+            return path;
+        return "/static/"+fingerprint+path;
     }
 
     /**
@@ -2,7 +2,6 @@ package org.kohsuke.stapler.export;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
-import java.io.IOException;
 
 /**
  * {@link Property} based on {@link Field}.
@@ -14,6 +13,7 @@ class FieldProperty extends Property {
     public FieldProperty(Model owner, Field field, Exported exported) {
         super(owner,field.getName(), exported);
         this.field = field;
+        suppressAccessCheck(field);
     }
 
     public Type getGenericType() {
@@ -3,6 +3,7 @@ package org.kohsuke.stapler.export;
 import org.kohsuke.stapler.StaplerResponse;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
 /**
@@ -25,6 +26,10 @@ public enum Flavor {
         public DataWriter createDataWriter(Writer w) throws IOException {
             return new JSONDataWriter(w);
         }
+        @Override
+        public DataWriter createDataWriter(Object bean, OutputStream out) throws IOException {
+            return new JSONByteDataWriter(out);
+        }
     },
     PYTHON("text/x-python;charset=UTF-8") {
         public DataWriter createDataWriter(Object bean, StaplerResponse rsp) throws IOException {
@@ -75,4 +80,18 @@ public enum Flavor {
 
     public abstract DataWriter createDataWriter(Object bean, StaplerResponse rsp) throws IOException;
     public abstract DataWriter createDataWriter(Object bean, Writer w) throws IOException;
+
+    /**
+     * Creates a {@link DataWriter} that writes UTF-8 straight to the given stream,
+     * skipping the character encoding of a {@link Writer}.
+     *
+     * <p>
+     * The output is buffered, and it's written to the stream when the outermost object or array ends.
+     *
+     * @return
+     *      null if this flavor only writes to a {@link Writer}.
+     */
+    public DataWriter createDataWriter(Object bean, OutputStream out) throws IOException {
+        return null;
+    }
 }
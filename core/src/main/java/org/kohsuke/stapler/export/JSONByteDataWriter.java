@@ -0,0 +1,234 @@
+package org.kohsuke.stapler.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * JSON writer that encodes UTF-8 by itself and writes bytes to an {@link OutputStream},
+ * instead of going through a {@link java.io.Writer} and the encoder of the container.
+ *
+ * <p>
+ * Property names are encoded once per {@link Property} (see {@link Property#jsonName}),
+ * and the output is collected in a buffer that's flushed when the outermost object or array ends.
+ * The buffer is then handed over to the next writer on the same thread, so that every response
+ * doesn't allocate its own.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see Flavor#createDataWriter(Object, OutputStream)
+ */
+final class JSONByteDataWriter implements DataWriter {
+    private final OutputStream out;
+    /**
+     * Null until something is written, and again once the buffer is handed back.
+     */
+    private byte[] buf;
+    private int pos;
+    private boolean needComma;
+    /**
+     * Number of objects and arrays that are open.
+     */
+    private int nest;
+
+    JSONByteDataWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void name(String name) throws IOException {
+        comma();
+        string(name);
+        write(':');
+        needComma = false;
+    }
+
+    /**
+     * Writes a name encoded by {@link #encodeName(String)}.
+     */
+    void name(byte[] name) throws IOException {
+        comma();
+        write(name,0,name.length);
+        needComma = false;
+    }
+
+    public void valuePrimitive(Object v) throws IOException {
+        comma();
+        if(v instanceof Number || v instanceof Boolean)
+            ascii(v.toString());
+        else
+            string(v.toString());   // such as Character, which can be anything
+    }
+
+    public void value(String v) throws IOException {
+        comma();
+        string(v);
+    }
+
+    public void valueNull() throws IOException {
+        comma();
+        ascii("null");
+    }
+
+    public void startArray() throws IOException {
+        comma();
+        write('[');
+        needComma = false;
+        nest++;
+    }
+
+    public void endArray() throws IOException {
+        write(']');
+        needComma = true;
+        end();
+    }
+
+    public void startObject() throws IOException {
+        comma();
+        write('{');
+        needComma = false;
+        nest++;
+    }
+
+    public void endObject() throws IOException {
+        write('}');
+        needComma = true;
+        end();
+    }
+
+    /**
+     * Writes out the buffer to the stream.
+     */
+    public void flush() throws IOException {
+        if(buf!=null)
+            out.write(buf,0,pos);
+        pos = 0;
+    }
+
+    private void end() throws IOException {
+        if(--nest==0) {
+            flush();    // the whole tree is written
+            BUFFER.set(buf);
+            buf = null;
+        }
+    }
+
+    /**
+     * Every write starts here, except those that close what has been started.
+     */
+    private void comma() throws IOException {
+        if(buf==null) {
+            // take the buffer, so that another writer nested on this thread allocates its own
+            buf = BUFFER.get();
+            if(buf==null)   buf = new byte[8192];
+            else            BUFFER.set(null);
+        }
+        if(needComma) write(',');
+        needComma = true;
+    }
+
+    private void write(int b) throws IOException {
+        if(pos==buf.length)
+            flush();
+        buf[pos++] = (byte)b;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        if(len>buf.length-pos) {
+            flush();
+            if(len>buf.length) {
+                out.write(b,off,len);
+                return;
+            }
+        }
+        System.arraycopy(b,off,buf,pos,len);
+        pos += len;
+    }
+
+    /**
+     * Writes a string known to be ASCII, such as a number.
+     */
+    private void ascii(String s) throws IOException {
+        int len = s.length();
+        for (int i=0; i<len; i++)
+            write(s.charAt(i));
+    }
+
+    /**
+     * Writes a quoted and escaped string.
+     */
+    private void string(String s) throws IOException {
+        write('"');
+        int len = s.length();
+        for (int i=0; i<len; i++) {
+            char c = s.charAt(i);
+            if(c<0x80) {
+                byte[] e = ESCAPES[c];
+                if(e==null)     write(c);
+                else            write(e,0,e.length);
+            } else
+            if(c<0x800) {
+                write(0xC0|(c>>6));
+                write(0x80|(c&0x3F));
+            } else
+            if(Character.isHighSurrogate(c) && i+1<len && Character.isLowSurrogate(s.charAt(i+1))) {
+                int cp = Character.toCodePoint(c,s.charAt(++i));
+                write(0xF0|(cp>>18));
+                write(0x80|((cp>>12)&0x3F));
+                write(0x80|((cp>>6)&0x3F));
+                write(0x80|(cp&0x3F));
+            } else
+            if(Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                write('?');     // unpaired, just like String.getBytes() does
+            } else {
+                write(0xE0|(c>>12));
+                write(0x80|((c>>6)&0x3F));
+                write(0x80|(c&0x3F));
+            }
+        }
+        write('"');
+    }
+
+    /**
+     * Encodes the property name, including the quotes and the colon that follows.
+     */
+    static byte[] encodeName(String name) {
+        try {
+            StringBuilder buf = new StringBuilder(name.length()+3);
+            buf.append('"');
+            for (int i=0; i<name.length(); i++) {
+                char c = name.charAt(i);
+                if(c<0x80 && ESCAPES[c]!=null)
+                    buf.append(new String(ESCAPES[c],"US-ASCII"));
+                else
+                    buf.append(c);
+            }
+            buf.append("\":");
+            return buf.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);    // every JRE has them
+        }
+    }
+
+    /**
+     * Buffer that the last writer on this thread is done with.
+     * A writer that fails halfway doesn't give it back, and the next one simply allocates a new one.
+     */
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>();
+
+    /**
+     * Escape sequences of ASCII characters, or null for those written as they are.
+     * Covers all the control characters, which JSON doesn't allow in strings.
+     */
+    private static final byte[][] ESCAPES = new byte[0x80][];
+
+    static {
+        for (int c=0; c<0x20; c++)
+            ESCAPES[c] = String.format("\\u%04x",c).getBytes();
+        ESCAPES['"'] = "\\\"".getBytes();
+        ESCAPES['\\'] = "\\\\".getBytes();
+        ESCAPES['\n'] = "\\n".getBytes();
+        ESCAPES['\r'] = "\\r".getBytes();
+        ESCAPES['\t'] = "\\t".getBytes();
+        ESCAPES['\b'] = "\\b".getBytes();
+        ESCAPES['\f'] = "\\f".getBytes();
+    }
+}
@@ -39,7 +39,10 @@ class JSONDataWriter implements DataWriter {
     }
 
     public void valuePrimitive(Object v) throws IOException {
-        data(v.toString());
+        if(v instanceof Character)
+            value(v.toString());    // it'd be an invalid token otherwise
+        else
+            data(v.toString());
     }
 
     public void value(String v) throws IOException {
@@ -4,7 +4,6 @@ import java.beans.Introspector;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.io.IOException;
 
 /**
  * {@link Property} based on {@link Method}.
@@ -15,6 +14,7 @@ final class MethodProperty extends Property {
     MethodProperty(Model owner, Method m, Exported exported) {
         super(owner,buildName(m.getName()), exported);
         this.method = m;
+        suppressAccessCheck(m);
     }
 
     private static String buildName(String name) {
@@ -40,6 +40,11 @@ final class MethodProperty extends Property {
     }
 
     protected Object getValue(Object object) throws IllegalAccessException, InvocationTargetException {
-        return method.invoke(object);
+        return method.invoke(object,NO_ARGS);
     }
+
+    /**
+     * Passed to {@link Method#invoke(Object, Object[])} so that it doesn't allocate an empty array every time.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
 }
@@ -44,7 +44,7 @@ public class Model<T> {
             throw new NotExportableException(type);
         this.defaultVisibility = eb.defaultVisibility();
         
-        parent.models.put(type,this);
+        parent.building.put(type,this);
 
         Class<? super T> sc = type.getSuperclass();
         if(sc!=null && sc.getAnnotation(ExportedBean.class)!=null)
@@ -129,16 +129,35 @@ public class Model<T> {
      *      and negative value means writing smaller trees.
      */
     public void writeTo(T object, int baseVisibility, DataWriter writer) throws IOException {
+        writeTo(object,null,baseVisibility,writer);
+    }
+
+    /**
+     * Writes the property values of the given object to the writer, selected by the filter.
+     *
+     * @param filter
+     *      Selects the properties to be written. Where it doesn't say, {@code baseVisibility} decides.
+     *      Null to write everything visible.
+     * @see #writeTo(Object, int, DataWriter)
+     */
+    public void writeTo(T object, TreeFilter filter, int baseVisibility, DataWriter writer) throws IOException {
         writer.startObject();
-        writeNestedObjectTo(object,1-baseVisibility,writer);
+        writeNestedObjectTo(object,filter,1-baseVisibility,writer);
         writer.endObject();
     }
 
-    void writeNestedObjectTo(T object, int depth, DataWriter writer) throws IOException {
+    void writeNestedObjectTo(T object, TreeFilter filter, int depth, DataWriter writer) throws IOException {
         if(superModel !=null)
-            superModel.writeNestedObjectTo(object,depth,writer);
-
-        for (Property p : properties)
-            p.writeTo(object,depth,writer);
+            superModel.writeNestedObjectTo(object,filter,depth,writer);
+
+        for (Property p : properties) {
+            if(filter==null) {
+                p.writeTo(object,depth,writer);
+            } else {
+                TreeFilter f = filter.get(p.name);
+                if(f!=null)
+                    p.writeTo(object,f,depth,writer);
+            }
+        }
     }
 }
@@ -1,5 +1,6 @@
 package org.kohsuke.stapler.export;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -10,11 +11,16 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class ModelBuilder {
     /**
-     * Instanciated {@link Model}s.
+     * Instanciated {@link Model}s, which are fully built and can be used without a lock.
+     */
+    /*package*/ final Map<Class, Model> models = new ConcurrentHashMap<Class, Model>();
+
+    /**
+     * {@link Model}s being built, which are only visible to the thread building them, under the lock.
      * Registration happens in {@link Model#Model(ModelBuilder,Class)} so that cyclic references
      * are handled correctly.
      */
-    /*package*/ final Map<Class, Model> models = new ConcurrentHashMap<Class, Model>();
+    /*package*/ final Map<Class, Model> building = new HashMap<Class, Model>();
 
     public <T> Model<T> get(Class<T> type) {
         Model m = models.get(type);
@@ -22,7 +28,15 @@ public class ModelBuilder {
             synchronized(this) {
                 m = models.get(type);
                 if(m==null)
-                    m = new Model<T>(this,type);
+                    m = building.get(type);
+                if(m==null) {
+                    try {
+                        m = new Model<T>(this,type);
+                    } finally {
+                        building.remove(type);
+                    }
+                    models.put(type,m);
+                }
             }
         }
         return m;
@@ -1,7 +1,12 @@
 package org.kohsuke.stapler.export;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.lang.reflect.Array;
 import java.net.URL;
@@ -10,8 +15,13 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Exposes one {@link Exported exposed property} of {@link ExportedBean} to
@@ -43,6 +53,11 @@ public abstract class Property implements Comparable<Property> {
      */
     private final boolean inline;
 
+    /**
+     * {@link #name} encoded for {@link JSONByteDataWriter}, so that it's not encoded for every object written.
+     */
+    /*package*/ final byte[] jsonName;
+
     Property(Model parent, String name, Exported exported) {
         this.parent = parent;
         this.owner = parent.parent;
@@ -52,6 +67,7 @@ public abstract class Property implements Comparable<Property> {
             v = parent.defaultVisibility;
         this.visibility = v;
         this.inline = exported.inline();
+        this.jsonName = JSONByteDataWriter.encodeName(this.name);
     }
 
     public int compareTo(Property that) {
@@ -76,10 +92,27 @@ public abstract class Property implements Comparable<Property> {
      */
     public void writeTo(Object object, int depth, DataWriter writer) throws IOException {
         if(visibility<depth)    return; // not visible
+        write(object,null,null,depth,writer);
+    }
 
+    /**
+     * Writes one property of the given object to {@link DataWriter}, as selected by a {@link TreeFilter}.
+     * The property is written regardless of its visibility.
+     *
+     * @param filter
+     *      The filter of this property, as opposed to that of the object.
+     */
+    public void writeTo(Object object, TreeFilter filter, int depth, DataWriter writer) throws IOException {
+        write(object,filter.isLeaf()?null:filter,filter.range,depth,writer);
+    }
+
+    private void write(Object object, TreeFilter filter, TreeFilter.Range range, int depth, DataWriter writer) throws IOException {
         try {
-            writer.name(name);
-            writeValue(getValue(object),depth-(inline?1:0),writer);
+            if(writer instanceof JSONByteDataWriter)
+                ((JSONByteDataWriter)writer).name(jsonName);
+            else
+                writer.name(name);
+            writeValue(getValue(object),filter,range,depth-(inline?1:0),writer,false,getType()==Iterable.class);
         } catch (IllegalAccessException e) {
             IOException x = new IOException("Failed to write " + name);
             x.initCause(e);
@@ -94,21 +127,28 @@ public abstract class Property implements Comparable<Property> {
     /**
      * Writes one value of the property to {@link DataWriter}.
      */
-    private void writeValue(Object value, int depth, DataWriter writer) throws IOException {
-        writeValue(value,depth,writer,false);
+    private void writeValue(Object value, TreeFilter filter, int depth, DataWriter writer) throws IOException {
+        writeValue(value,filter,null,depth,writer,false,false);
     }
 
     /**
      * Writes one value of the property to {@link DataWriter}.
+     *
+     * @param range
+     *      If the value is an array or a collection, which items to write. Null to write all.
+     * @param iterable
+     *      True if the value is declared as {@link Iterable}, in which case it's written like a collection.
+     *      Other {@link Iterable}s aren't, as some of them, like <tt>java.nio.file.Path</tt>,
+     *      consist of items of their own type, which would never end.
      */
-    private void writeValue(Object value, int depth, DataWriter writer, boolean skipIfFail) throws IOException {
+    private void writeValue(Object value, TreeFilter filter, TreeFilter.Range range, int depth, DataWriter writer, boolean skipIfFail, boolean iterable) throws IOException {
         if(value==null) {
             writer.valueNull();
             return;
         }
 
         if(value instanceof CustomExportedBean) {
-            writeValue(((CustomExportedBean)value).toExportedObject(),depth,writer);
+            writeValue(((CustomExportedBean)value).toExportedObject(),filter,range,depth,writer,skipIfFail,false);
             return;
         }
 
@@ -124,31 +164,66 @@ public abstract class Property implements Comparable<Property> {
         }
         if(c.getComponentType()!=null) { // array
             writer.startArray();
+            int len = Array.getLength(value);
+            int end = range==null ? len : range.end(len);
             if (value instanceof Object[]) {
                 // typical case
-                for (Object item : (Object[]) value)
-                    writeValue(item,depth,writer,true);
+                Object[] items = (Object[]) value;
+                for (int i=range==null?0:range.start(len); i<end; i++)
+                    writeValue(items[i],filter,null,depth,writer,true,false);
             } else {
                 // more generic case
-                int len = Array.getLength(value);
-                for (int i=0; i<len; i++)
-                    writeValue(Array.get(value,i),depth,writer,true);
+                for (int i=range==null?0:range.start(len); i<end; i++)
+                    writeValue(Array.get(value,i),filter,null,depth,writer,true,false);
             }
             writer.endArray();
             return;
         }
+        if(value instanceof List && value instanceof RandomAccess && range!=null) {
+            // jump straight to the range
+            writer.startArray();
+            List items = (List) value;
+            int size = items.size();
+            for (int i=range.start(size), end=range.end(size); i<end; i++)
+                writeValue(items.get(i),filter,null,depth,writer,true,false);
+            writer.endArray();
+            return;
+        }
         if(value instanceof Collection) {
             writer.startArray();
-            for (Object item : (Collection) value)
-                writeValue(item,depth,writer,true);
+            writeItems(((Collection) value).iterator(),filter,range,depth,writer);
             writer.endArray();
             return;
         }
+        if(value instanceof Iterator || (iterable && c.getAnnotation(ExportedBean.class)==null)) {
+            // possibly a lazily loaded sequence. consume one item at a time, without collecting them
+            Iterator itr = value instanceof Iterator ? (Iterator) value : ((Iterable) value).iterator();
+            try {
+                writer.startArray();
+                writeItems(itr,filter,range,depth,writer);
+                writer.endArray();
+            } finally {
+                close(itr);
+                if(value!=itr)
+                    close(value);
+            }
+            return;
+        }
+        if(BASE_STREAM!=null && BASE_STREAM.isInstance(value)) {
+            try {
+                writer.startArray();
+                writeItems((Iterator)invoke(STREAM_ITERATOR,value),filter,range,depth,writer);
+                writer.endArray();
+            } finally {
+                close(value);
+            }
+            return;
+        }
         if(value instanceof Map) {
             writer.startObject();
             for (Map.Entry e : ((Map<?,?>) value).entrySet()) {
                 writer.name(e.getKey().toString());
-                writeValue(e.getValue(),depth,writer);
+                writeValue(e.getValue(),filter,depth,writer);
             }
             writer.endObject();
             return;
@@ -177,15 +252,78 @@ public abstract class Property implements Comparable<Property> {
             // otherwise ignore this error by writing empty object
         }
         if(model!=null)
-            model.writeNestedObjectTo(value,depth+1,writer);
+            model.writeNestedObjectTo(value,filter,filter==null?depth+1:depth,writer);   // see TreeFilter for the depth
         writer.endObject();
     }
 
+    /**
+     * Writes the items of a collection or a sequence, as many as the range allows.
+     * Items after the range aren't even retrieved, as some sequences load them lazily.
+     */
+    private void writeItems(Iterator itr, TreeFilter filter, TreeFilter.Range range, int depth, DataWriter writer) throws IOException {
+        int min = range==null ? 0 : range.min;
+        int max = range==null ? Integer.MAX_VALUE : range.max;
+        for (int i=0; i<max && itr.hasNext(); i++) {
+            Object item = itr.next();
+            if(i>=min)
+                writeValue(item,filter,null,depth,writer,true,false);
+        }
+    }
+
+    /**
+     * Closes a sequence once it's written, if it's {@link Closeable} or a stream.
+     * A failure is only logged, so that it doesn't hide the exception that writing the sequence may have thrown.
+     */
+    private void close(Object sequence) {
+        try {
+            if(sequence instanceof Closeable)
+                ((Closeable)sequence).close();
+            else
+            if(BASE_STREAM!=null && BASE_STREAM.isInstance(sequence))
+                invoke(STREAM_CLOSE,sequence);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close "+name,e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to close "+name,e);
+        }
+    }
+
+    /**
+     * Calls a method of {@link #BASE_STREAM}.
+     */
+    private Object invoke(Method m, Object stream) throws IOException {
+        try {
+            return m.invoke(stream);
+        } catch (IllegalAccessException e) {
+            IOException x = new IOException("Failed to write " + name);
+            x.initCause(e);
+            throw x;
+        } catch (InvocationTargetException e) {
+            IOException x = new IOException("Failed to write " + name);
+            x.initCause(e);
+            throw x;
+        }
+    }
+
     /**
      * Gets the value of this property from the bean.
      */
     protected abstract Object getValue(Object bean) throws IllegalAccessException, InvocationTargetException;
 
+    /**
+     * Properties are read for every object written, so when the access check on the field or method
+     * would pass anyway, don't let the reflection repeat it on every call. This doesn't change what's accessible.
+     */
+    /*package*/ static <T extends AccessibleObject & Member> void suppressAccessCheck(T m) {
+        if(!Modifier.isPublic(m.getModifiers()) || !Modifier.isPublic(m.getDeclaringClass().getModifiers()))
+            return;
+        try {
+            m.setAccessible(true);
+        } catch (SecurityException e) {
+            LOGGER.log(Level.FINE, "Unable to suppress the access check on "+m,e);
+        }
+    }
+
     /*package*/ static final Set<Class> STRING_TYPES = new HashSet<Class>(Arrays.asList(
         String.class,
         URL.class
@@ -200,4 +338,30 @@ public abstract class Property implements Comparable<Property> {
         Float.class,
         Double.class
     ));
+
+    /**
+     * java.util.stream.BaseStream, which is written like a collection, and its iterator() and close() methods.
+     * We can't refer to them directly, as they don't exist before Java 8.
+     */
+    /*package*/ static final Class BASE_STREAM;
+    private static final Method STREAM_ITERATOR, STREAM_CLOSE;
+
+    static {
+        Class c = null;
+        Method iterator = null, close = null;
+        try {
+            c = Class.forName("java.util.stream.BaseStream");
+            iterator = c.getMethod("iterator");
+            close = c.getMethod("close");
+        } catch (ClassNotFoundException e) {
+            c = null;   // no streams in this JRE
+        } catch (NoSuchMethodException e) {
+            c = null;
+        }
+        BASE_STREAM = c;
+        STREAM_ITERATOR = iterator;
+        STREAM_CLOSE = close;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(Property.class.getName());
 }
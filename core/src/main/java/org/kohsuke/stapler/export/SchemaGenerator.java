@@ -11,7 +11,7 @@ import org.kohsuke.stapler.export.XSD.Annotated;
 import javax.xml.namespace.QName;
 import javax.xml.transform.Result;
 import java.util.Calendar;
-import java.util.Collection;
+import java.util.Iterator;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -88,10 +88,10 @@ public class SchemaGenerator {
                 isCollection = true;
                 itemType = t.getComponentType();
             } else
-            if(Collection.class.isAssignableFrom(t)) {
+            if(getSequenceType(t)!=null) {
                 isCollection = true;
                 itemType = TypeUtil.erasure(
-                    TypeUtil.getTypeArgument(TypeUtil.getBaseClass(p.getGenericType(),Collection.class),0));
+                    TypeUtil.getTypeArgument(TypeUtil.getBaseClass(p.getGenericType(),getSequenceType(t)),0));
             } else {
                 isCollection = false;
                 itemType = t;
@@ -110,6 +110,19 @@ public class SchemaGenerator {
         }
     }
 
+    /**
+     * If the given type is written as a sequence of items, like a collection, returns its generic base type.
+     */
+    private static Class getSequenceType(Class t) {
+        if(t==Iterable.class)
+            return Iterable.class;  // other Iterables are written as beans. see Property
+        if(Iterator.class.isAssignableFrom(t))
+            return Iterator.class;
+        if(Property.BASE_STREAM!=null && Property.BASE_STREAM.isAssignableFrom(t))
+            return Property.BASE_STREAM;
+        return null;
+    }
+
     /**
      * Annotates the schema element by javadoc, if that exists.
      */
@@ -0,0 +1,233 @@
+package org.kohsuke.stapler.export;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Selects which properties of exported beans are written, like "jobs[name,color,builds[number]]".
+ *
+ * <p>
+ * Each node lists the properties to be written of the object it applies to. Properties that aren't listed
+ * are skipped without even being read, so getters that are expensive to compute aren't called.
+ * Properties that are listed are written regardless of their {@link Exported#visibility() visibility},
+ * since the client asked for them explicitly.
+ *
+ * <p>
+ * A property listed without brackets, like "name" above, is written as if it were a property of the root object.
+ * That is, the depth the objects are nested in the filter doesn't count, and the usual visibility cut-off
+ * applies from there on. "[]" after a property writes nested objects empty.
+ *
+ * <p>
+ * An array or a collection property can be followed by a range, to only write some of its items,
+ * like "builds[number]{0,50}" for the first 50 builds. "{M,N}" writes the items from index M (inclusive)
+ * to N (exclusive), "{M,}" from M to the end, "{,N}" the first N, and "{M}" just the one at M.
+ * Items outside the range aren't even looked at where the collection allows it.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see Model#writeTo(Object, TreeFilter, int, DataWriter)
+ */
+public final class TreeFilter {
+    /**
+     * Filters of the properties to be written, keyed by their names.
+     * Null if this is a leaf, in which case everything below is written.
+     */
+    private final Map<String,TreeFilter> children;
+
+    /**
+     * Items to write, if the property is an array or a collection. Null to write all.
+     */
+    /*package*/ final Range range;
+
+    private TreeFilter(Map<String,TreeFilter> children, Range range) {
+        this.children = children;
+        this.range = range;
+    }
+
+    /**
+     * Does this node let everything below it to be written?
+     */
+    public boolean isLeaf() {
+        return children==null;
+    }
+
+    /**
+     * Gets the filter of the given property.
+     *
+     * @return
+     *      null if the property isn't to be written.
+     */
+    public TreeFilter get(String name) {
+        return children==null ? LEAF : children.get(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        if(children!=null) {
+            buf.append('[');
+            for (Map.Entry<String,TreeFilter> e : children.entrySet()) {
+                if(buf.length()>1)  buf.append(',');
+                buf.append(e.getKey()).append(e.getValue());
+            }
+            buf.append(']');
+        }
+        if(range!=null)
+            buf.append(range);
+        return buf.toString();
+    }
+
+    /**
+     * Range of the items to write, from {@link #min} (inclusive) to {@link #max} (exclusive).
+     */
+    /*package*/ static final class Range {
+        final int min;
+        /**
+         * {@link Integer#MAX_VALUE} if unbounded.
+         */
+        final int max;
+
+        Range(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Index of the first item to write, in a collection of the given size.
+         */
+        int start(int size) {
+            return Math.min(min,size);
+        }
+
+        /**
+         * Index after the last item to write, in a collection of the given size.
+         */
+        int end(int size) {
+            return Math.max(start(size),Math.min(max,size));
+        }
+
+        @Override
+        public String toString() {
+            return "{"+min+','+(max==Integer.MAX_VALUE?"":String.valueOf(max))+'}';
+        }
+    }
+
+    /**
+     * Parses the filter, which is a comma-separated list of property names,
+     * each optionally followed by the filter of its value in brackets.
+     *
+     * @throws IllegalArgumentException
+     *      if the syntax is wrong.
+     */
+    public static TreeFilter parse(String spec) {
+        Parser p = new Parser(spec);
+        TreeFilter t = p.list();
+        if(p.pos<spec.length())
+            throw p.error("Unexpected '"+spec.charAt(p.pos)+"'");
+        return t;
+    }
+
+    private static final class Parser {
+        private final String spec;
+        private int pos;
+
+        Parser(String spec) {
+            this.spec = spec;
+        }
+
+        TreeFilter list() {
+            Map<String,TreeFilter> children = new LinkedHashMap<String,TreeFilter>();
+            while(true) {
+                String name = name();
+                Map<String,TreeFilter> grandChildren = null;
+                if(peek()=='[') {
+                    pos++;
+                    grandChildren = peek()==']' ? Collections.<String,TreeFilter>emptyMap() : list().children;
+                    if(peek()!=']')
+                        throw error("Missing ']'");
+                    pos++;
+                }
+                Range range = null;
+                if(peek()=='{') {
+                    pos++;
+                    range = range();
+                }
+                children.put(name,grandChildren==null && range==null ? LEAF : new TreeFilter(grandChildren,range));
+
+                if(peek()!=',')
+                    return new TreeFilter(children,null);
+                pos++;
+            }
+        }
+
+        /**
+         * Parses "M,N}", "M,}", ",N}", or "M}".
+         */
+        private Range range() {
+            int min = number(-1);
+            int max;
+            if(peek()==',') {
+                pos++;
+                max = number(Integer.MAX_VALUE);
+                min = Math.max(min,0);
+            } else {
+                if(min<0)
+                    throw error("Missing index");
+                max = min+1;
+            }
+            if(peek()!='}')
+                throw error("Missing '}'");
+            pos++;
+            if(max<min)
+                throw error("Empty range");
+            return new Range(min,max);
+        }
+
+        /**
+         * Parses a non-negative integer, or returns the default value if there's none.
+         */
+        private int number(int defaultValue) {
+            peek();
+            int start = pos;
+            while(pos<spec.length() && Character.isDigit(spec.charAt(pos)))
+                pos++;
+            if(start==pos)
+                return defaultValue;
+            try {
+                return Integer.parseInt(spec.substring(start,pos));
+            } catch (NumberFormatException e) {
+                throw error("Index too large");
+            }
+        }
+
+        private String name() {
+            int start = pos;
+            while(pos<spec.length() && DELIMITERS.indexOf(spec.charAt(pos))<0)
+                pos++;
+            String name = spec.substring(start,pos).trim();
+            if(name.length()==0)
+                throw error("Missing property name");
+            return name;
+        }
+
+        /**
+         * Returns the next character other than whitespace, or 0 at the end.
+         */
+        private char peek() {
+            while(pos<spec.length() && Character.isWhitespace(spec.charAt(pos)))
+                pos++;
+            return pos<spec.length() ? spec.charAt(pos) : 0;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg+" at "+pos+" in "+spec);
+        }
+    }
+
+    private static final String DELIMITERS = ",[]{}";
+
+    /**
+     * Writes everything below, as if there's no filter.
+     */
+    private static final TreeFilter LEAF = new TreeFilter(null,null);
+}
@@ -0,0 +1,38 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+import org.apache.commons.beanutils.Converter;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class AnnotationHandlerTest extends TestCase {
+    public static final class Color {
+        final String name;
+        Color(String name) { this.name = name; }
+    }
+
+    /**
+     * A converter registered after the parameter is prepared is still picked up.
+     */
+    public void testConverterRegisteredLater() {
+        Converter c = AnnotationHandler.lookupConverter(Color.class);
+        try {
+            c.convert(Color.class,"red");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // no converter yet
+        }
+
+        Stapler.CONVERT_UTILS.register(new Converter() {
+            public Object convert(Class type, Object value) {
+                return new Color(value.toString());
+            }
+        },Color.class);
+        try {
+            assertEquals("red",((Color)c.convert(Color.class,"red")).name);
+        } finally {
+            Stapler.CONVERT_UTILS.deregister(Color.class);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class MetaClassLoaderTest extends TestCase {
+    private File jar;
+    private URLClassLoader loader;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        jar = File.createTempFile("stapler",".jar");
+        jar.deleteOnExit();
+        writeJar("body {}");
+        loader = new URLClassLoader(new URL[]{jar.toURI().toURL()},null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if(loader!=null)
+            MetaClassLoader.discard(loader);
+        jar.delete();
+        super.tearDown();
+    }
+
+    public void testFindResource() throws Exception {
+        MetaClassLoader mcl = MetaClassLoader.get(loader);
+        ClassLoaderResource r = mcl.findResource("org/example/style.css");
+        assertEquals(loader.getResource("org/example/style.css").toString(),r.url.toString());
+        assertEquals(7,r.length);
+        assertEquals(1234567890000L,r.lastModified);
+        assertSame(r,mcl.findResource("org/example/style.css"));
+
+        assertEquals(7,r.url.openConnection().getContentLength());
+        assertEquals("body {}",read(r.url));
+
+        assertNull(mcl.findResource("org/example/missing.css"));
+        assertNull(mcl.getResource("org/example/missing.css"));
+    }
+
+    public void testDiscard() throws Exception {
+        URL url = MetaClassLoader.get(loader).getResource("org/example/style.css");
+        MetaClassLoader.discard(loader);
+        // the jar file is closed, but the URL still works
+        assertEquals("body {}",read(url));
+    }
+
+    public void testRewrittenJar() throws Exception {
+        MetaClassLoader mcl = MetaClassLoader.get(loader);
+        ClassLoaderResource r = mcl.findResource("org/example/style.css");
+        assertEquals("body {}",read(r.url));
+
+        writeJar("body { color: red }");
+        r = mcl.findResource("org/example/style.css");
+        assertEquals(19,r.length);
+        assertEquals("body { color: red }",read(r.url));
+    }
+
+    public void testCollected() throws Exception {
+        WebApp webApp = new WebApp(new MockServletContext());
+        Class c = loader.loadClass(Plugin.class.getName());
+        assertSame(loader,c.getClassLoader());
+        assertNotNull(webApp.getMetaClass(c).classLoader.getResource("org/example/style.css"));
+
+        webApp.discard(loader);
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        loader = null;
+        c = null;
+        for (int i=0; i<100 && ref.get()!=null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+    }
+
+    /**
+     * Loaded from the jar file by {@link #loader}.
+     */
+    public static class Plugin {
+        public String getName() {
+            return "plugin";
+        }
+    }
+
+    private void writeJar(String css) throws IOException {
+        JarOutputStream o = new JarOutputStream(new FileOutputStream(jar));
+        JarEntry e = new JarEntry("org/example/style.css");
+        e.setTime(1234567890000L);
+        o.putNextEntry(e);
+        o.write(css.getBytes());
+
+        String name = Plugin.class.getName().replace('.','/')+".class";
+        o.putNextEntry(new JarEntry(name));
+        InputStream in = getClass().getClassLoader().getResourceAsStream(name);
+        try {
+            byte[] buf = new byte[1024];
+            int len;
+            while((len=in.read(buf))>=0)
+                o.write(buf,0,len);
+        } finally {
+            in.close();
+        }
+        o.close();
+    }
+
+    private static String read(URL url) throws IOException {
+        InputStream in = url.openStream();
+        try {
+            StringBuilder buf = new StringBuilder();
+            int ch;
+            while((ch=in.read())>=0)
+                buf.append((char)ch);
+            return buf.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
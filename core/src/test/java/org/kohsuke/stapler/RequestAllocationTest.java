@@ -0,0 +1,92 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import javax.servlet.http.HttpServletResponse;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Puts an upper bound on how much memory {@link Stapler#invoke(javax.servlet.http.HttpServletRequest, HttpServletResponse, Object, String)}
+ * allocates for one request.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class RequestAllocationTest extends TestCase {
+    public static final class Root {
+        public Node getFoo() { return node; }
+        private final Node node = new Node();
+    }
+
+    public static final class Node {
+        int hit;
+        public Node getBar(int i) { return this; }
+        public Node getZot() { return this; }
+        public void doIndex() { hit++; }
+    }
+
+    private static final String URL = "/foo/bar/5/zot/";
+
+    public void testAllocationPerRequest() throws Exception {
+        Stapler stapler = new Stapler();
+        stapler.init(new ServletConfigImpl());
+
+        Root root = new Root();
+        MockRequest req = new MockRequest() {
+            @Override public String getRequestURI() { return URL; }
+            @Override public String getContextPath() { return ""; }
+            @Override public String getMethod() { return "GET"; }
+        };
+        HttpServletResponse rsp = (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{HttpServletResponse.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        final int N = 10000;
+        for (int i=0; i<N; i++)   // warm up
+            stapler.invoke(req,rsp,root,URL);
+        assertEquals(N,root.node.hit);
+
+        Long before = allocatedBytes();
+        for (int i=0; i<N; i++)
+            stapler.invoke(req,rsp,root,URL);
+        Long after = allocatedBytes();
+
+        assertEquals(2*N,root.node.hit);
+        if(before!=null && after!=null) {
+            long perRequest = (after-before)/N;
+            assertTrue("Stapler.invoke allocated "+perRequest+" bytes per request for "+URL,
+                    perRequest<MAX_BYTES_PER_REQUEST);
+        }
+    }
+
+    /**
+     * Bytes per request measured on JDK 17. It was 1520 before the allocations were trimmed,
+     * 1432 after that, and 864 once side files were cached per {@link MetaClass}.
+     */
+    private static final long MEASURED_BYTES_PER_REQUEST = 864;
+
+    /**
+     * Half again as much as {@link #MEASURED_BYTES_PER_REQUEST}, which leaves room for differences between JVMs,
+     * but still catches the side file look-up coming back to every request.
+     */
+    private static final long MAX_BYTES_PER_REQUEST = MEASURED_BYTES_PER_REQUEST*3/2;
+
+    /**
+     * Bytes allocated by the current thread so far, if the JVM can tell us.
+     */
+    private static Long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            Method m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            return (Long)m.invoke(bean,Thread.currentThread().getId());
+        } catch (Exception e) {
+            return null;    // not available on this JVM
+        }
+    }
+}
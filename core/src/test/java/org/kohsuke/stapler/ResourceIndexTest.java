@@ -0,0 +1,61 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class ResourceIndexTest extends TestCase {
+    private final Map<String,Set<String>> dirs = new HashMap<String,Set<String>>();
+
+    private final MockServletContext context = new MockServletContext() {
+        @Override
+        public Set getResourcePaths(String s) {
+            return dirs.get(s);
+        }
+    };
+
+    private void dir(String path, String... children) {
+        dirs.put(path,new HashSet<String>(Arrays.asList(children)));
+    }
+
+    public void testSelect() {
+        dir("/","/index.html","/css/","/WEB-INF/");
+        dir("/css/","/css/style.css","/css/style_ja.css","/css/img/");
+        dir("/css/img/","/css/img/logo.png");
+        dir("/WEB-INF/","/WEB-INF/web.xml");
+
+        ResourceIndex index = ResourceIndex.build(context);
+        assertEquals(4,index.size());
+
+        assertEquals("/css/style_ja.css",index.select("/css/style.css",Locale.JAPAN));
+        assertEquals("/css/style.css",index.select("/css/style.css",Locale.GERMANY));
+        assertEquals("/css/img/logo.png",index.select("/css/img/logo.png",Locale.JAPAN));
+        assertEquals("/index.html",index.select("/index.html",Locale.US));
+        assertNull(index.select("/job/foo/",Locale.US));
+        assertNull(index.select("/css/",Locale.US));
+
+        // private directories are left to the container
+        assertTrue(index.covers("/css/style.css"));
+        assertFalse(index.covers("/WEB-INF/web.xml"));
+        assertFalse(index.covers("/meta-inf/MANIFEST.MF"));
+    }
+
+    public void testUnsupported() {
+        assertNull(ResourceIndex.build(context));
+    }
+
+    public void testLocaleVariants() {
+        assertEquals(Arrays.asList("/a/foo_ja_JP_.html","/a/foo_ja_JP.html","/a/foo_ja.html"),
+                Arrays.asList(ResourceIndex.getLocaleVariants("/a/foo.html",Locale.JAPAN)));
+        assertNull(ResourceIndex.getLocaleVariants("/a.b/foo",Locale.JAPAN));
+        assertNull(ResourceIndex.getLocaleVariants("/foo",Locale.JAPAN));
+    }
+}
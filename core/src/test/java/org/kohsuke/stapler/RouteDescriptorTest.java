@@ -0,0 +1,142 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class RouteDescriptorTest extends TestCase {
+    public static class Foo {
+        @WebMethod(name={"bar.txt","zot"})
+        @LimitedTo("admin")
+        public void doBar(StaplerRequest req, StaplerResponse rsp) {}
+        public Object getItem(int i) { return null; }
+        public Object getNames(String[] names) { return null; }
+        public void notRoute() {}
+    }
+
+    public static class Derived extends Foo {
+        @Override
+        public Object getItem(int i) { return null; }
+        public String getText() { return null; }
+    }
+
+    public static class Stale {
+        public void doSomethingElse() {}
+    }
+
+    public static class NoDescriptor {
+        public void doBar() {}
+    }
+
+    static class Hidden {
+        public void doHidden() {}
+    }
+
+    /**
+     * Its descriptor lists nothing, as the route comes from a package-private base class.
+     */
+    public static class Exposed extends Hidden {
+    }
+
+    public void testLoad() throws Exception {
+        Map<String,Function> functions = toMap(RouteDescriptor.load(Foo.class));
+        assertEquals(4,functions.size());
+
+        Function bar = functions.get("doBar");
+        assertTrue(bar instanceof Function.ProtectedFunction);
+        assertEquals(Arrays.asList("bar.txt","zot"),Arrays.asList(bar.getWebMethodNames()));
+        assertEquals(Foo.class.getMethod("getNames",String[].class).getName(),functions.get("getNames").getName());
+        assertEquals(0,functions.get("getItem").getWebMethodNames().length);
+        assertNotNull(functions.get("getClass"));   // inherited from Object, as with getMethods()
+    }
+
+    public void testInheritance() throws Exception {
+        Map<String,Function> functions = toMap(RouteDescriptor.load(Derived.class));
+        assertEquals(5,functions.size());
+        assertEquals(Derived.class.getName()+".getItem",functions.get("getItem").getQualifiedName());
+        assertEquals(Foo.class.getName()+".doBar",functions.get("doBar").getQualifiedName());
+    }
+
+    public void testFallback() {
+        assertNull(RouteDescriptor.load(NoDescriptor.class));
+        assertNull(RouteDescriptor.load(Stale.class));
+        assertNull(RouteDescriptor.load(String.class));
+        assertNull(RouteDescriptor.load(Exposed.class));
+
+        // ClassDescriptor goes back to reflection
+        assertTrue(new ClassDescriptor(NoDescriptor.class).methods.name("doBar").iterator().hasNext());
+    }
+
+    /**
+     * Runs the processor over a source file and makes sure the output parses back.
+     */
+    public void testProcessor() throws Exception {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if(javac==null)     return; // running on JRE
+
+        File dir = File.createTempFile("routes","");
+        dir.delete();
+        dir.mkdirs();
+
+        String cp = new File(WebMethod.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        JavaFileObject src = new SimpleJavaFileObject(URI.create("string:///test/Sample.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return "package test;\n"+
+                       "public class Sample {\n"+
+                       "  @org.kohsuke.stapler.WebMethod(name=\"x\") @org.kohsuke.stapler.LimitedTo(\"r\")\n"+
+                       "  public void doIt(String s, int[] i) {}\n"+
+                       "  public static class Inner { public <T extends Sample> T getT(java.util.List<T> l) { return null; } }\n"+
+                       "  void doHidden() {}\n"+
+                       "}";
+            }
+        };
+        boolean ok = javac.getTask(null,null,null,
+                Arrays.asList("-proc:only","-processor",RouteDescriptorProcessor.class.getName(),
+                        "-A"+RouteDescriptorProcessor.OPTION+"=true",
+                        "-classpath",cp,"-processorpath",cp,"-d",dir.getPath()),
+                null, Collections.singletonList(src)).call();
+        assertTrue(ok);
+
+        List<RouteDescriptor.Route> routes = RouteDescriptor.parse(new File(dir,"test/Sample.stapler-routes").toURI().toURL());
+        assertEquals(1,routes.size());
+        RouteDescriptor.Route r = routes.get(0);
+        assertEquals("doIt(java.lang.String,int[])",r.getSignature());
+        assertEquals(Arrays.asList("x"),r.webMethodNames);
+        assertEquals("r",r.limitedTo);
+
+        routes = RouteDescriptor.parse(new File(dir,"test/Sample/Inner.stapler-routes").toURI().toURL());
+        assertEquals(1,routes.size());
+        assertEquals("getT(java.util.List)",routes.get(0).getSignature());
+
+        // off without the option
+        File dir2 = new File(dir,"off");
+        dir2.mkdirs();
+        assertTrue(javac.getTask(null,null,null,
+                Arrays.asList("-proc:only","-processor",RouteDescriptorProcessor.class.getName(),
+                        "-classpath",cp,"-processorpath",cp,"-d",dir2.getPath()),
+                null, Collections.singletonList(src)).call());
+        assertFalse(new File(dir2,"test/Sample.stapler-routes").exists());
+    }
+
+    private Map<String,Function> toMap(List<Function> functions) {
+        assertNotNull(functions);
+        Map<String,Function> r = new HashMap<String,Function>();
+        for (Function f : functions)
+            r.put(f.getName(),f);
+        return r;
+    }
+}
@@ -0,0 +1,54 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class SideFileTest extends TestCase {
+    public static class Base {}
+    public static class Derived extends Base {}
+
+    private final List<String> probes = new ArrayList<String>();
+
+    private WebApp webApp = new WebApp(new MockServletContext() {
+        @Override
+        public URL getResource(String path) throws MalformedURLException {
+            probes.add(path);
+            if(path.equals("/WEB-INF/side-files/org/kohsuke/stapler/SideFileTest/Base/index.html"))
+                return new URL("file:/index.html");
+            return null;
+        }
+    });
+
+    public void testCache() throws Exception {
+        MetaClass mc = webApp.getMetaClass(Derived.class);
+        String expected = "/WEB-INF/side-files/org/kohsuke/stapler/SideFileTest/Base/index.html";
+        assertEquals(expected,mc.findSideFile("index.html"));
+        int n = probes.size();
+        assertEquals(expected,mc.findSideFile("index.html"));
+        assertEquals(n,probes.size());
+
+        // negative result is cached, too
+        assertNull(mc.findSideFile("index.jsp"));
+        n = probes.size();
+        assertNull(mc.findSideFile("index.jsp"));
+        assertEquals(n,probes.size());
+
+        // until the scripts are cleared
+        webApp.clearScripts(AbstractTearOff.class);
+        assertNull(mc.findSideFile("index.jsp"));
+        assertTrue(n<probes.size());
+    }
+
+    public void testNestedClassDirectory() throws Exception {
+        webApp.getMetaClass(Derived.class).findSideFile("foo.jsp");
+        assertTrue(probes.contains("/WEB-INF/side-files/org/kohsuke/stapler/SideFileTest/Derived/foo.jsp"));
+        assertTrue(probes.contains("/WEB-INF/side-files/org/kohsuke/stapler/SideFileTest$Derived/foo.jsp"));
+    }
+}
@@ -0,0 +1,83 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class StaticResourceCacheTest extends TestCase {
+    private StaticResourceCache.Entry put(StaticResourceCache cache, String url, int size, boolean compress) throws IOException {
+        return cache.put(url,new ByteArrayInputStream(new byte[size]),0,"text/plain",compress);
+    }
+
+    public void testLRU() throws Exception {
+        StaticResourceCache cache = new StaticResourceCache(300,200);
+        put(cache,"a",100,false);
+        put(cache,"b",100,false);
+        put(cache,"c",100,false);
+        assertEquals(300,cache.getSize());
+
+        assertNotNull(cache.get("a"));  // now 'b' is the least recently used one
+        put(cache,"d",100,false);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+
+        assertEquals(3,cache.getCount());
+        assertEquals(1,cache.getEvictionCount());
+        assertEquals(4,cache.getHitCount());
+        assertEquals(1,cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0,cache.getSize());
+        assertNull(cache.get("a"));
+    }
+
+    public void testAccepts() {
+        StaticResourceCache cache = new StaticResourceCache(300,200);
+        assertTrue(cache.accepts(200));
+        assertFalse(cache.accepts(201));
+        assertFalse(cache.accepts(-1));
+        assertFalse(new StaticResourceCache(0,200).accepts(0));
+    }
+
+    public void testCompression() throws Exception {
+        StaticResourceCache cache = new StaticResourceCache(100000,100000);
+        StaticResourceCache.Entry e = put(cache,"a",10000,true);
+        assertEquals(10000,e.data.length);
+        assertTrue(e.gzipped.length<e.data.length);
+        assertEquals(e.size(),cache.getSize());
+
+        // incompressible data is kept only once
+        e = put(cache,"b",0,true);
+        assertNull(e.gzipped);
+        assertTrue(Arrays.equals(new byte[0],cache.get("b").data));
+    }
+
+    public void testModifiedFile() throws Exception {
+        File f = File.createTempFile("stapler",".css");
+        try {
+            FileOutputStream o = new FileOutputStream(f);
+            o.write("body {}".getBytes());
+            o.close();
+
+            StaticResourceCache cache = new StaticResourceCache(1000,1000);
+            cache.put("a",f,new FileInputStream(f),null,f.lastModified(),"text/css",false);
+            assertNotNull(cache.get("a"));
+
+            assertTrue(f.setLastModified(f.lastModified()+10000));
+            assertNull(cache.get("a"));
+            assertEquals(0,cache.getSize());
+        } finally {
+            f.delete();
+        }
+    }
+}
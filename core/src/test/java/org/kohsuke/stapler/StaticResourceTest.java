@@ -0,0 +1,417 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.kohsuke.stapler.export.Flavor;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Tests the static resource serving in {@link Stapler}, and what {@link ResponseImpl} sends in response to HEAD.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class StaticResourceTest extends TestCase {
+    /**
+     * Bigger than what {@link StaticResourceCache} takes by default, so that the file gets streamed.
+     */
+    private static final int SIZE = 300000;
+
+    private Stapler stapler;
+    private File file;
+    private final Map<String,String> requestHeaders = new HashMap<String,String>();
+    private String requestURI = "/foo.bin";
+    private String method = "GET";
+
+    private final MockRequest req = new MockRequest() {
+        @Override
+        public String getHeader(String name) {
+            return requestHeaders.get(name);
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getRequestURI() {
+            return requestURI;
+        }
+
+        @Override
+        public String getContextPath() {
+            return "";
+        }
+
+        @Override
+        public String getParameter(String name) {
+            return null;
+        }
+    };
+
+    /**
+     * Records what's sent to the client.
+     */
+    class Response implements InvocationHandler {
+        int status = 200;
+        final Map<String,String> headers = new HashMap<String,String>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final ResponseImpl rsp = new ResponseImpl(stapler,(HttpServletResponse)Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[]{HttpServletResponse.class}, this));
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String n = method.getName();
+            if(n.equals("setStatus"))
+                status = (Integer)args[0];
+            else if(n.equals("setHeader") || n.equals("addHeader"))
+                headers.put((String)args[0],(String)args[1]);
+            else if(n.equals("setContentLength"))
+                headers.put("Content-Length",String.valueOf(args[0]));
+            else if(n.equals("setContentType"))
+                headers.put("Content-Type",(String)args[0]);
+            else if(n.equals("isCommitted"))
+                return false;
+            else if(n.equals("getOutputStream"))
+                return new ServletOutputStream() {
+                    public void write(int b) {
+                        body.write(b);
+                    }
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        body.write(b,off,len);
+                    }
+                };
+            else
+                throw new UnsupportedOperationException(n);
+            return null;
+        }
+
+        String body() {
+            return new String(body.toByteArray());
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        stapler = new Stapler();
+        stapler.init(new ServletConfigImpl());
+        file = File.createTempFile("stapler",".bin");
+        file.deleteOnExit();
+        FileOutputStream o = new FileOutputStream(file);
+        for (int i=0; i<SIZE; i++)
+            o.write('0'+i%10);
+        o.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    private Response serve() throws IOException {
+        return serve(file);
+    }
+
+    private Response serve(File f) throws IOException {
+        Response r = new Response();
+        assertTrue(stapler.serveStaticResource(req,r.rsp,f.toURI().toURL(),0));
+        return r;
+    }
+
+    public void testFile() throws Exception {
+        Response r = serve();
+        assertEquals(200,r.status);
+        assertEquals(String.valueOf(SIZE),r.headers.get("Content-Length"));
+        assertEquals(SIZE,r.body.size());
+        assertEquals("0123456789",r.body().substring(50000,50010));
+    }
+
+    public void testFileRange() throws Exception {
+        requestHeaders.put("Range","bytes=70005-70009");
+        Response r = serve();
+        assertEquals(206,r.status);
+        assertEquals("5",r.headers.get("Content-Length"));
+        assertEquals("bytes 70005-70009/"+SIZE,r.headers.get("Content-Range"));
+        assertEquals("56789",r.body());
+    }
+
+    public void testSuffixRange() throws Exception {
+        requestHeaders.put("Range","bytes=-3");
+        Response r = serve();
+        assertEquals(206,r.status);
+        assertEquals("bytes "+(SIZE-3)+"-"+(SIZE-1)+"/"+SIZE,r.headers.get("Content-Range"));
+        assertEquals("789",r.body());
+    }
+
+    public void testMultipleRanges() throws Exception {
+        requestHeaders.put("Range","bytes=10-12,-2");
+        Response r = serve();
+        assertEquals(206,r.status);
+        String type = r.headers.get("Content-Type");
+        assertTrue(type,type.startsWith("multipart/byteranges; boundary="));
+        String boundary = type.substring(type.indexOf('=')+1);
+        String body = r.body();
+        assertEquals(String.valueOf(body.length()),r.headers.get("Content-Length"));
+        assertTrue(body.contains("Content-Range: bytes 10-12/"+SIZE+"\r\n\r\n012\r\n--"+boundary));
+        assertTrue(body.endsWith("Content-Range: bytes "+(SIZE-2)+"-"+(SIZE-1)+"/"+SIZE+"\r\n\r\n89\r\n--"+boundary+"--\r\n"));
+    }
+
+    public void testUnsatisfiableRange() throws Exception {
+        requestHeaders.put("Range","bytes="+SIZE+"-");
+        Response r = serve();
+        assertEquals(416,r.status);
+        assertEquals("bytes */"+SIZE,r.headers.get("Content-Range"));
+        assertEquals(0,r.body.size());
+    }
+
+    public void testIfRange() throws Exception {
+        requestHeaders.put("Range","bytes=0-9");
+        requestHeaders.put("If-Range","Thu, 01 Jan 1970 00:00:00 GMT");
+        Response r = serve();
+        assertEquals(200,r.status);
+        assertEquals(SIZE,r.body.size());
+
+        requestHeaders.put("If-Range",r.headers.get("Last-Modified"));
+        r = serve();
+        assertEquals(206,r.status);
+        assertEquals("0123456789",r.body());
+    }
+
+    public void testCachedRange() throws Exception {
+        FileOutputStream o = new FileOutputStream(file);
+        o.write("0123456789".getBytes());
+        o.close();
+
+        serve();    // puts it in the cache
+        requestHeaders.put("Range","bytes=2-4,-1");
+        Response r = serve();
+        assertEquals(1,stapler.getWebApp().staticResourceCache.getHitCount());
+        assertEquals(206,r.status);
+        assertTrue(r.body().contains("\r\n\r\n234\r\n"));
+
+        requestHeaders.put("Range","bytes=-4");
+        r = serve();
+        assertEquals("6789",r.body());
+    }
+
+    public void testCachedVary() throws Exception {
+        File js = new File(file.getPath()+".js");
+        js.deleteOnExit();
+        FileOutputStream o = new FileOutputStream(js);
+        for (int i=0; i<100; i++)
+            o.write("var x = 1;\n".getBytes());
+        o.close();
+        try {
+            serve(js);  // puts it in the cache
+            requestHeaders.put("Accept-Encoding","gzip");
+            Response r = serve(js);
+            assertEquals(1,stapler.getWebApp().staticResourceCache.getHitCount());
+            assertEquals("gzip",r.headers.get("Content-Encoding"));
+            assertEquals("Accept-Encoding",r.headers.get("Vary"));
+
+            requestHeaders.clear();
+            r = serve(js);
+            assertNull(r.headers.get("Content-Encoding"));
+            assertEquals("Accept-Encoding",r.headers.get("Vary"));
+
+            // nothing to vary for what isn't compressed
+            assertNull(serve().headers.get("Vary"));
+        } finally {
+            js.delete();
+        }
+    }
+
+    public void testParseRange() {
+        assertEquals("[0-499]",ByteRange.parse("bytes=0-499",1000).toString());
+        assertEquals("[500-999]",ByteRange.parse("bytes=500-",1000).toString());
+        assertEquals("[0-999]",ByteRange.parse("bytes=-5000",1000).toString());
+        assertEquals("[0-0, 999-999]",ByteRange.parse("bytes=0-0, -1",1000).toString());
+        assertEquals("[]",ByteRange.parse("bytes=1000-",1000).toString());
+        assertEquals("[]",ByteRange.parse("bytes=-0",1000).toString());
+        assertNull(ByteRange.parse("bytes=5-1",1000));
+        assertNull(ByteRange.parse("bytes=a-b",1000));
+        assertNull(ByteRange.parse("lines=1-2",1000));
+        assertFalse(ByteRange.isAscending(ByteRange.parse("bytes=-1,0-1",1000)));
+        assertTrue(ByteRange.isAscending(ByteRange.parse("bytes=0-1,5-",1000)));
+    }
+
+    public void testPrecompressed() throws Exception {
+        File js = new File(file.getPath()+".js");
+        js.deleteOnExit();
+        assertTrue(file.renameTo(js));
+        try {
+            requestHeaders.put("Accept-Encoding","gzip");
+            File gz = new File(js.getPath()+".gz");
+            gz.deleteOnExit();
+            assertTrue(new Precompressor().compress(js));
+            assertFalse(new Precompressor().compress(js));   // up to date
+
+            Response r = serve(js);
+            assertEquals("gzip",r.headers.get("Content-Encoding"));
+            assertEquals(String.valueOf(gz.length()),r.headers.get("Content-Length"));
+            assertEquals(gz.length(),r.body.size());
+            assertEquals("Accept-Encoding",r.headers.get("Vary"));
+
+            // compressed copies are only for the entire resource
+            requestHeaders.put("Range","bytes=0-9");
+            r = serve(js);
+            assertNull(r.headers.get("Content-Encoding"));
+            assertEquals("0123456789",r.body());
+            requestHeaders.remove("Range");
+
+            // stale copies are ignored
+            gz.setLastModified(js.lastModified()-10000);
+            r = serve(js);
+            assertFalse(String.valueOf(gz.length()).equals(r.headers.get("Content-Length")));
+            assertEquals("gzip",r.headers.get("Content-Encoding"));
+            assertEquals("Accept-Encoding",r.headers.get("Vary"));
+
+            // the uncompressed one varies, too
+            requestHeaders.remove("Accept-Encoding");
+            r = serve(js);
+            assertNull(r.headers.get("Content-Encoding"));
+            assertEquals("Accept-Encoding",r.headers.get("Vary"));
+            gz.delete();
+        } finally {
+            js.delete();
+        }
+    }
+
+    public void testIfModifiedSince() throws Exception {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z",Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        requestHeaders.put("If-Modified-Since",format.format(new Date(file.lastModified()+60000)));
+        Response r = serve();
+        assertEquals(304,r.status);
+
+        // If-None-Match takes precedence, and this one doesn't match
+        requestHeaders.put("If-None-Match","\"somethingElse\"");
+        r = serve();
+        assertEquals(200,r.status);
+        assertEquals(SIZE,r.body.size());
+        requestHeaders.clear();
+    }
+
+    public void testFingerprint() throws Exception {
+        String fingerprint = stapler.getWebApp().resourceFingerprints.get(file.toURI().toURL());
+        assertEquals(20,fingerprint.length());
+
+        requestURI = "/static/"+fingerprint+"/foo.bin";
+        Response r = serve();
+        assertEquals(200,r.status);
+        assertEquals('"'+fingerprint+'"',r.headers.get("ETag"));
+        assertTrue(r.headers.get("Cache-Control").endsWith("immutable"));
+
+        requestHeaders.put("If-None-Match",'"'+fingerprint+'"');
+        r = serve();
+        assertEquals(304,r.status);
+        assertEquals(0,r.body.size());
+        requestHeaders.remove("If-None-Match");
+
+        requestHeaders.put("Range","bytes=0-9");
+        requestHeaders.put("If-Range",'"'+fingerprint+'"');
+        r = serve();
+        assertEquals(206,r.status);
+        assertEquals("0123456789",r.body());
+
+        requestHeaders.put("If-Range","\"somethingElse\"");
+        r = serve();
+        assertEquals(200,r.status);
+        requestHeaders.clear();
+
+        // version strings and stale fingerprints are still served, but not as immutable
+        requestURI = "/static/1.0/foo.bin";
+        r = serve();
+        assertEquals(200,r.status);
+        assertNull(r.headers.get("ETag"));
+        assertNull(r.headers.get("Cache-Control"));
+
+        // the file changes in place, so the old fingerprint is stale
+        requestURI = "/static/"+fingerprint+"/foo.bin";
+        FileOutputStream o = new FileOutputStream(file,true);
+        o.write('x');
+        o.close();
+        r = serve();
+        assertEquals(200,r.status);
+        assertEquals(SIZE+1,r.body.size());
+        assertNull(r.headers.get("ETag"));
+        assertNull(r.headers.get("Cache-Control"));
+        assertFalse(fingerprint.equals(stapler.getWebApp().resourceFingerprints.get(file.toURI().toURL())));
+    }
+
+    public void testHead() throws Exception {
+        method = "HEAD";
+        Response r = serve();
+        assertEquals(200,r.status);
+        assertEquals(String.valueOf(SIZE),r.headers.get("Content-Length"));
+        assertEquals(0,r.body.size());
+
+        requestHeaders.put("Range","bytes=0-9,20-29");
+        r = serve();
+        assertEquals(206,r.status);
+        assertNotNull(r.headers.get("Content-Length"));
+        assertEquals(0,r.body.size());
+        requestHeaders.clear();
+
+        // small resources go through the cache
+        FileOutputStream o = new FileOutputStream(file);
+        o.write("0123456789".getBytes());
+        o.close();
+        r = serve();
+        assertEquals("10",r.headers.get("Content-Length"));
+        assertEquals(0,r.body.size());
+    }
+
+    public void testHeadOfCompressedOutput() throws Exception {
+        method = "HEAD";
+        Response r = new Response();
+        OutputStream o = r.rsp.getCompressedOutputStream(req);
+        o.write(new byte[100]);
+        o.close();
+        assertNull(r.headers.get("Content-Encoding"));
+        assertEquals("100",r.headers.get("Content-Length"));
+        assertEquals(0,r.body.size());
+
+        // the length after compression isn't known without compressing it
+        requestHeaders.put("Accept-Encoding","gzip");
+        r = new Response();
+        o = r.rsp.getCompressedOutputStream(req);
+        o.write(new byte[100]);
+        o.close();
+        assertEquals("gzip",r.headers.get("Content-Encoding"));
+        assertNull(r.headers.get("Content-Length"));
+        assertEquals(0,r.body.size());
+    }
+
+    @ExportedBean public static class Bean {
+        @Exported public String getName() { throw new AssertionError("shouldn't be called"); }
+    }
+
+    public void testHeadOfExposedBean() throws Exception {
+        method = "HEAD";
+        Response r = new Response();
+        r.rsp.serveExposedBean(new RequestImpl(stapler,req,new ArrayList<AncestorImpl>(),new TokenList("")),new Bean(),Flavor.JSON);
+        assertEquals(Flavor.JSON.contentType,r.headers.get("Content-Type"));
+        assertEquals(0,r.body.size());
+    }
+}
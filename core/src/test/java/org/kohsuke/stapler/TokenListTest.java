@@ -0,0 +1,58 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class TokenListTest extends TestCase {
+    public void testTokenize() {
+        TokenList t = new TokenList("//foo/bar%20zot//abc/");
+        assertEquals(3,t.length());
+        assertEquals("foo",t.get(0));
+        assertEquals("bar zot",t.get(1));
+        assertEquals("bar%20zot",t.getRaw(1));
+        assertEquals("abc",t.get(2));
+        assertEquals(Arrays.asList("foo","bar zot","abc"),Arrays.asList(t.getTokens()));
+        assertEquals(Arrays.asList("foo","bar%20zot","abc"),Arrays.asList(t.getRawTokens()));
+
+        assertEquals("foo",t.next());
+        assertEquals("/bar zot/abc",t.assembleRestOfPath());
+        assertEquals("/bar%20zot/abc",t.assembleOriginalRestOfPath());
+        assertEquals(2,t.countRemainingTokens());
+    }
+
+    public void testEmpty() {
+        for (String url : new String[]{"","/","///"}) {
+            TokenList t = new TokenList(url);
+            assertEquals(0,t.length());
+            assertFalse(t.hasMore());
+            assertNull(t.peek());
+            assertNull(t.tryNextAsInt());
+            assertEquals("",t.assembleOriginalRestOfPath());
+        }
+    }
+
+    public void testNextAsInt() {
+        TokenList t = new TokenList("/12/-3/x/2147483648/-2147483648");
+        assertEquals(12,t.nextAsInt());
+        assertEquals(Integer.valueOf(-3),t.tryNextAsInt());
+
+        assertNull(t.tryNextAsInt());
+        assertEquals("x",t.peek());     // not consumed
+        try {
+            t.nextAsInt();
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+        t.next();
+
+        assertNull(t.tryNextAsInt());   // overflow
+        t.next();
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE),t.tryNextAsInt());
+        assertFalse(t.hasMore());
+    }
+}
@@ -0,0 +1,60 @@
+package org.kohsuke.stapler;
+
+import junit.framework.TestCase;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class WarmUpTest extends TestCase {
+    public static class Root {
+        public Child getChild() { return null; }
+        public List<Item> getItems() { return null; }
+        public Item[] getItem(int i) { return null; }
+        public String getName() { return null; }
+    }
+
+    public static class Child {
+        public Root getParent() { return null; }    // cycle
+    }
+
+    @ExportedBean
+    public static class Item {
+        @Exported
+        public Detail getDetail() { return null; }
+    }
+
+    public static class Detail {
+    }
+
+    public void testWarmUp() throws Exception {
+        WebApp webApp = new WebApp(new MockServletContext());
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            WarmUp w = webApp.warmUp(Root.class, es);
+            assertTrue(w.join(10, TimeUnit.SECONDS));
+            assertTrue(w.isDone());
+            assertEquals(0,w.getPendingCount());
+            assertEquals(0,w.getFailureCount());
+            // Root, Child, Item, and Detail. String is skipped
+            assertEquals(4,w.getCompletedCount());
+            assertFalse(es.isShutdown());   // not ours to shut down
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    public void testOwnExecutor() throws Exception {
+        WebApp webApp = new WebApp(new MockServletContext());
+        WarmUp w = webApp.warmUp(new Child());
+        w.join();
+        assertEquals(4,w.getCompletedCount());
+        assertTrue(w.toString().contains("done"));
+    }
+}
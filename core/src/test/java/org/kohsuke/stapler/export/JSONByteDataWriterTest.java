@@ -0,0 +1,80 @@
+package org.kohsuke.stapler.export;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class JSONByteDataWriterTest extends TestCase {
+    @ExportedBean public static class X {
+        @Exported public String a = "aval";
+        @Exported public int b = 3;
+        @Exported public boolean c = true;
+        @Exported public String d = null;
+        @Exported public List<Y> e = Arrays.asList(new Y(), new Y());
+        @Exported public String f = "caf\u00e9 \u20ac \ud83d\ude00";
+        @Exported public char g = '\u00e9';
+    }
+    @ExportedBean public static class Y {
+        @Exported public String text = "y";
+    }
+
+    private static <T> String serialize(T bean, Class<T> clazz) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ModelBuilder().get(clazz).writeTo(bean,Flavor.JSON.createDataWriter(bean,out));
+        return new String(out.toByteArray(),"UTF-8");
+    }
+
+    public void testSameAsCharacterWriter() throws Exception {
+        StringWriter w = new StringWriter();
+        new ModelBuilder().get(X.class).writeTo(new X(),Flavor.JSON.createDataWriter(new X(),w));
+        assertEquals(w.toString(),serialize(new X(),X.class));
+        assertTrue(w.toString().contains("\"g\":\"\u00e9\""));
+    }
+
+    /**
+     * A writer used while another one on the same thread is halfway doesn't share its buffer.
+     */
+    public void testNested() throws Exception {
+        ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+        DataWriter w1 = Flavor.JSON.createDataWriter(null,out1);
+        w1.startArray();
+        w1.value("a");
+
+        assertEquals("{\"text\":\"y\"}",serialize(new Y(),Y.class));
+
+        w1.value("b");
+        w1.endArray();
+        assertEquals("[\"a\",\"b\"]",new String(out1.toByteArray(),"UTF-8"));
+        assertEquals("{\"text\":\"y\"}",serialize(new Y(),Y.class));
+    }
+
+    public void testEscape() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataWriter w = Flavor.JSON.createDataWriter(null,out);
+        w.startObject();
+        w.name("x\"y");
+        w.startArray();
+        w.value("a\"b\\c\n\t\u0001\u001f\b");
+        w.value("\ud800");
+        w.endArray();
+        w.endObject();
+        assertEquals("{\"x\\\"y\":[\"a\\\"b\\\\c\\n\\t\\u0001\\u001f\\b\",\"?\"]}",new String(out.toByteArray(),"UTF-8"));
+    }
+
+    public void testLargeOutput() throws Exception {
+        char[] big = new char[20000];
+        Arrays.fill(big,'\u00e9');
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataWriter w = Flavor.JSON.createDataWriter(null,out);
+        w.startArray();
+        w.value(new String(big));
+        w.endArray();
+        assertEquals("[\""+new String(big)+"\"]",new String(out.toByteArray(),"UTF-8"));
+    }
+}
@@ -0,0 +1,98 @@
+package org.kohsuke.stapler.export;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how fast {@link Model} writes a deep graph of {@link ExportedBean}s, compared to a {@link Model}
+ * whose properties are read with the access check, the way they were before {@link Property#suppressAccessCheck},
+ * and how the property access compares to a plain {@link Method#invoke(Object, Object[])}.
+ *
+ * <p>
+ * This is not a test. Run it with the test classpath, optionally with the number of rounds as the argument.
+ *
+ * @author Kohsuke Kawaguchi
+ */
+public class ModelBenchmark {
+    @ExportedBean(defaultVisibility=100)
+    public static class Node {
+        private final int id;
+        private final List<Node> children = new ArrayList<Node>();
+
+        public Node(int id, int depth, int width) {
+            this.id = id;
+            if(depth>0)
+                for (int i=0; i<width; i++)
+                    children.add(new Node(id*width+i,depth-1,width));
+        }
+
+        @Exported public int getId() { return id; }
+        @Exported public String getName() { return "node"+id; }
+        @Exported public boolean isLeaf() { return children.isEmpty(); }
+        @Exported public String url = "http://example.org/";
+        @Exported public List<Node> getChildren() { return children; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length>0 ? Integer.parseInt(args[0]) : 20;
+
+        Node root = new Node(1,6,5);    // about 20K nodes, 100K properties
+        Model<Node> model = new ModelBuilder().get(Node.class);
+        Model<Node> checked = new ModelBuilder().get(Node.class);
+        for (Property p : checked.getProperties())
+            restoreAccessCheck(p);
+        Method m = Node.class.getMethod("getName");
+        Property p = find(model,"name");
+
+        for (int i=0; i<rounds; i++) {
+            long start = System.nanoTime();
+            model.writeTo(root,Flavor.JSON.createDataWriter(root,new NullWriter()));
+            long write = System.nanoTime()-start;
+
+            start = System.nanoTime();
+            checked.writeTo(root,Flavor.JSON.createDataWriter(root,new NullWriter()));
+            long checkedWrite = System.nanoTime()-start;
+
+            // what the properties cost without suppressing the access check and with the varargs array
+            start = System.nanoTime();
+            for (int j=0; j<100000; j++)
+                m.invoke(root);
+            long plain = System.nanoTime()-start;
+
+            start = System.nanoTime();
+            for (int j=0; j<100000; j++)
+                p.getValue(root);
+            long property = System.nanoTime()-start;
+
+            System.out.printf("write: %6dus  with access check: %6dus  Method.invoke: %6dus  Property.getValue: %6dus%n",
+                    write/1000, checkedWrite/1000, plain/1000, property/1000);
+        }
+    }
+
+    /**
+     * Turns the access check back on for the field or the method behind the property.
+     */
+    private static void restoreAccessCheck(Property p) throws Exception {
+        Field f = p.getClass().getDeclaredField(p instanceof MethodProperty ? "method" : "field");
+        f.setAccessible(true);
+        ((AccessibleObject)f.get(p)).setAccessible(false);
+    }
+
+    private static Property find(Model<?> model, String name) {
+        for (Property p : model.getProperties())
+            if(p.name.equals(name))
+                return p;
+        throw new IllegalArgumentException(name);
+    }
+
+    private static final class NullWriter extends Writer {
+        public void write(char[] cbuf, int off, int len) {}
+        public void flush() {}
+        public void close() throws IOException {}
+    }
+}
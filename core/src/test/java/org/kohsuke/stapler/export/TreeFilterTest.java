@@ -0,0 +1,222 @@
+package org.kohsuke.stapler.export;
+
+import junit.framework.TestCase;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class TreeFilterTest extends TestCase {
+    @ExportedBean public static class Job {
+        private final String name;
+        public Job(String name) { this.name = name; }
+
+        @Exported public String getName() { return name; }
+        @Exported public String getColor() { return "blue"; }
+        @Exported public List<Build> getBuilds() { return Arrays.asList(new Build(1),new Build(2)); }
+        @Exported public String getExpensive() { throw new AssertionError("shouldn't be called"); }
+    }
+    @ExportedBean public static class Build {
+        @Exported public final int number;
+        @Exported public String result = "SUCCESS";
+        public Build(int number) { this.number = number; }
+    }
+    @ExportedBean public static class Root {
+        @Exported public List<Job> getJobs() { return Arrays.asList(new Job("a"),new Job("b")); }
+        @Exported public String getDescription() { throw new AssertionError("shouldn't be called"); }
+    }
+
+    private static String serialize(String tree) throws Exception {
+        return serialize(tree,0);
+    }
+
+    private static String serialize(String tree, int depth) throws Exception {
+        StringWriter w = new StringWriter();
+        new ModelBuilder().get(Root.class).writeTo(new Root(),TreeFilter.parse(tree),depth,Flavor.JSON.createDataWriter(null,w));
+        return w.toString();
+    }
+
+    public void testWrite() throws Exception {
+        assertEquals("{\"jobs\":[{\"builds\":[{\"number\":1},{\"number\":2}],\"name\":\"a\"},{\"builds\":[{\"number\":1},{\"number\":2}],\"name\":\"b\"}]}",
+                serialize("jobs[name, builds[number]]"));
+        assertEquals("{\"jobs\":[{},{}]}",serialize("jobs[]"));
+    }
+
+    /**
+     * A property without brackets is written like a property of the root object.
+     */
+    public void testLeaf() throws Exception {
+        assertEquals("{\"jobs\":[{\"builds\":[{},{}]},{\"builds\":[{},{}]}]}",serialize("jobs[builds]"));
+        assertEquals("{\"jobs\":[{\"builds\":[{\"number\":1,\"result\":\"SUCCESS\"},{\"number\":2,\"result\":\"SUCCESS\"}]},{\"builds\":[{\"number\":1,\"result\":\"SUCCESS\"},{\"number\":2,\"result\":\"SUCCESS\"}]}]}",
+                serialize("jobs[builds]",1));
+    }
+
+    public void testRange() throws Exception {
+        assertEquals("{\"jobs\":[{\"builds\":[{\"number\":2}],\"name\":\"a\"},{\"builds\":[{\"number\":2}],\"name\":\"b\"}]}",
+                serialize("jobs[name,builds[number]{1,}]"));
+        assertEquals("{\"jobs\":[{\"name\":\"b\"}]}",serialize("jobs[name]{1}"));
+        assertEquals("{\"jobs\":[{\"name\":\"a\"}]}",serialize("jobs[name]{,1}"));
+        assertEquals("{\"jobs\":[]}",serialize("jobs[name]{5,10}"));
+        assertEquals("{\"jobs\":[{},{}]}",serialize("jobs{0,2}"));
+    }
+
+    /**
+     * Collections that aren't {@link java.util.RandomAccess} are walked only up to the end of the range.
+     */
+    public void testRangeOfIterable() throws Exception {
+        final int[] count = new int[1];
+        Build[] builds = new Build[100];
+        for (int i=0; i<builds.length; i++)
+            builds[i] = new Build(i);
+        final LinkedList<Build> list = new LinkedList<Build>(Arrays.asList(builds)) {
+            @Override
+            public ListIterator<Build> listIterator(int index) {
+                final ListIterator<Build> base = super.listIterator(index);
+                return new ListIterator<Build>() {
+                    public boolean hasNext() { return base.hasNext(); }
+                    public Build next() { count[0]++; return base.next(); }
+                    public boolean hasPrevious() { return base.hasPrevious(); }
+                    public Build previous() { return base.previous(); }
+                    public int nextIndex() { return base.nextIndex(); }
+                    public int previousIndex() { return base.previousIndex(); }
+                    public void remove() { base.remove(); }
+                    public void set(Build b) { base.set(b); }
+                    public void add(Build b) { base.add(b); }
+                };
+            }
+        };
+        Job job = new Job("a") {
+            @Override
+            public List<Build> getBuilds() { return list; }
+        };
+        StringWriter w = new StringWriter();
+        new ModelBuilder().get(Job.class).writeTo(job,TreeFilter.parse("builds[number]{2,4}"),0,Flavor.JSON.createDataWriter(null,w));
+        assertEquals("{\"builds\":[{\"number\":2},{\"number\":3}]}",w.toString());
+        assertEquals(4,count[0]);
+    }
+
+    @ExportedBean public static class Sequences {
+        boolean closed, iterableClosed;
+        @Exported public Iterator<Integer> getIterator() {
+            return new CloseableIterator(Arrays.asList(1,2,3).iterator());
+        }
+        @Exported public Iterable<Integer> getIterable() {
+            return new CloseableIterable();
+        }
+        @Exported public Object getStream() throws Exception {
+            if(Property.BASE_STREAM==null)  return null;    // no streams in this JRE
+            Object s = Class.forName("java.util.stream.Stream").getMethod("of",Object[].class).invoke(null,new Object[]{new Object[]{7,8,9}});
+            return Property.BASE_STREAM.getMethod("onClose",Runnable.class).invoke(s,new Runnable() {
+                public void run() {
+                    closed = true;
+                }
+            });
+        }
+
+        private class CloseableIterator implements Iterator<Integer>, Closeable {
+            private final Iterator<Integer> base;
+            CloseableIterator(Iterator<Integer> base) { this.base = base; }
+            public boolean hasNext() { return base.hasNext(); }
+            public Integer next() { return base.next(); }
+            public void remove() { base.remove(); }
+            public void close() { closed = true; }
+        }
+
+        private class CloseableIterable implements Iterable<Integer>, Closeable {
+            public Iterator<Integer> iterator() { return Arrays.asList(4,5,6).iterator(); }
+            public void close() { iterableClosed = true; }
+        }
+    }
+
+    public void testSequences() throws Exception {
+        Sequences s = new Sequences();
+        StringWriter w = new StringWriter();
+        new ModelBuilder().get(Sequences.class).writeTo(s,TreeFilter.parse("iterable{1,},iterator{,2}"),0,Flavor.JSON.createDataWriter(null,w));
+        assertEquals("{\"iterable\":[5,6],\"iterator\":[1,2]}",w.toString());
+        assertTrue(s.closed);
+        assertTrue(s.iterableClosed);
+
+        if(Property.BASE_STREAM!=null) {
+            s = new Sequences();
+            w = new StringWriter();
+            new ModelBuilder().get(Sequences.class).writeTo(s,TreeFilter.parse("stream{1}"),0,Flavor.JSON.createDataWriter(null,w));
+            assertEquals("{\"stream\":[8]}",w.toString());
+            assertTrue(s.closed);
+        }
+    }
+
+    @ExportedBean public static class Broken {
+        @Exported public Iterator<Integer> getItems() {
+            return new BrokenIterator();
+        }
+    }
+
+    private static class BrokenIterator implements Iterator<Integer>, Closeable {
+        public boolean hasNext() { return true; }
+        public Integer next() { throw new IllegalStateException("next"); }
+        public void remove() { throw new UnsupportedOperationException(); }
+        public void close() throws IOException { throw new IOException("close"); }
+    }
+
+    /**
+     * A failure to close the sequence doesn't hide the failure to write it.
+     */
+    public void testCloseFailure() throws Exception {
+        try {
+            new ModelBuilder().get(Broken.class).writeTo(new Broken(),TreeFilter.parse("items"),0,Flavor.JSON.createDataWriter(null,new StringWriter()));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("next",e.getMessage());
+        }
+    }
+
+    /**
+     * Like <tt>java.nio.file.Path</tt>, which consists of paths.
+     */
+    public static class Node implements Iterable<Node> {
+        public Iterator<Node> iterator() {
+            return Collections.singletonList(new Node()).iterator();
+        }
+    }
+
+    @ExportedBean public static class Tree {
+        @Exported public Node getNode() {
+            return new Node();
+        }
+    }
+
+    /**
+     * Only the properties declared as {@link Iterable} are written like collections.
+     */
+    public void testSelfSimilarIterable() throws Exception {
+        try {
+            new ModelBuilder().get(Tree.class).writeTo(new Tree(),TreeFilter.parse("node"),0,Flavor.JSON.createDataWriter(null,new StringWriter()));
+            fail();
+        } catch (NotExportableException e) {
+            // expected, as opposed to StackOverflowError
+        }
+    }
+
+    public void testParse() {
+        assertEquals("[a]",TreeFilter.parse("a").toString());
+        assertEquals("[a[b]]",TreeFilter.parse(" a [ b ] ").toString());
+        assertEquals("[a[b]{0,5},c{3,4},d{2,}]",TreeFilter.parse("a[b]{0,5},c{3},d{2,}").toString());
+        for (String s : new String[]{"","a[b","a]","a,,b","a[b]c","[a]","a{}","a{3,1}","a{1","a{x}"}) {
+            try {
+                TreeFilter.parse(s);
+                fail(s);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
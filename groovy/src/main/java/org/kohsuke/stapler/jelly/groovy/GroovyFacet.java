@@ -15,6 +15,7 @@ import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import java.io.IOException;
 import java.util.List;
+import java.util.logging.Level;
 
 /**
  * {@link Facet} that brings in Groovy support on top of Jelly.
@@ -66,4 +67,13 @@ public class GroovyFacet extends Facet {
     public boolean handleIndexRequest(RequestImpl req, ResponseImpl rsp, Object node, MetaClass nodeMetaClass) throws IOException, ServletException {
         return nodeMetaClass.loadTearOff(GroovyClassTearOff.class).serveIndexGroovy(req, rsp, node);
     }
+
+    public void warmUp(MetaClass owner) {
+        try {
+            owner.loadTearOff(GroovyClassTearOff.class).findScript("index.groovy");
+        } catch (Exception e) {
+            // the view will be loaded again on demand, and the error is reported then
+            LOGGER.log(Level.FINE, "Failed to warm up index.groovy of "+owner.clazz, e);
+        }
+    }
 }
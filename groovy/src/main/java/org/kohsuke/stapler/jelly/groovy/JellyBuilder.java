@@ -577,6 +577,9 @@ public final class JellyBuilder extends GroovyObjectSupport {
      *      is resolved from. If this is class, 'localName' is assumed
      *      to be a resource of this class. If it's other objects,
      *      'localName' is assumed to be a resource of the class of this object.
+     * @return
+     *      The URL carries the fingerprint of the resource, so that browsers can cache it forever.
+     *      See {@link AdjunctManager#getResourceURL(Class, String)}.
      */
     public String res(Object base, String localName) {
         Class c;
@@ -584,6 +587,6 @@ public final class JellyBuilder extends GroovyObjectSupport {
             c = (Class) base;
         else
             c = base.getClass();
-        return adjunctManager.rootURL+'/'+c.getName().replace('.','/')+'/'+localName;
+        return adjunctManager.getResourceURL(c,localName);
     }
 }
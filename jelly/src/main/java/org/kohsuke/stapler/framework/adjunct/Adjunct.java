@@ -10,7 +10,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,6 +51,18 @@ public class Adjunct {
      */
     private final String inclusionFragment;
 
+    /**
+     * URLs of the CSS and JavaScript relative to the context path, with the fingerprints
+     * of their contents. See {@link AdjunctManager#getResourceURL(String)}.
+     */
+    private final String cssURL, jsURL;
+
+    /**
+     * This adjunct and all the adjuncts it requires directly or indirectly, dependencies first.
+     * Computed on the first use, since the required adjuncts are loaded separately.
+     */
+    private volatile List<Adjunct> closure;
+
     /**
      * Builds an adjunct.
      *
@@ -66,6 +81,9 @@ public class Adjunct {
 
         if(!hasCss && !hasJavaScript && inclusionFragment==null)
             throw new NoSuchAdjunctException("Neither "+ name +".css nor "+ name +".js nor "+name+".html were found");
+
+        this.cssURL = hasCss ? manager.getResourceURL(slashedName+".css") : null;
+        this.jsURL = hasJavaScript ? manager.getResourceURL(slashedName+".js") : null;
     }
 
     private boolean parseOne(ClassLoader classLoader, String resName) throws IOException {
@@ -102,6 +120,48 @@ public class Adjunct {
     }
 
 
+    /**
+     * Does this adjunct provide its own HTML, instead of CSS and JavaScript that we link to?
+     */
+    /*package*/ boolean hasInclusionFragment() {
+        return inclusionFragment!=null;
+    }
+
+    /**
+     * Obtains this adjunct and all the adjuncts it requires directly or indirectly,
+     * in the order they need to be included. This adjunct comes last.
+     *
+     * <p>
+     * Required adjuncts that don't exist are skipped, and so are those that
+     * appear again in a circular dependency.
+     */
+    /*package*/ List<Adjunct> getClosure() throws IOException {
+        List<Adjunct> c = closure;
+        if(c==null) {
+            c = new ArrayList<Adjunct>();
+            Set<String> visited = new HashSet<String>();
+            visited.add(name);
+            for (String r : required)
+                addClosure(manager,r,visited,c);
+            c.add(this);
+            closure = c = Collections.unmodifiableList(c);
+        }
+        return c;
+    }
+
+    private static void addClosure(AdjunctManager manager, String name, Set<String> visited, List<Adjunct> closure) throws IOException {
+        if(!visited.add(name))
+            return;
+        try {
+            Adjunct a = manager.get(name);
+            for (String r : a.required)
+                addClosure(manager,r,visited,closure);
+            closure.add(a);
+        } catch (NoSuchAdjunctException e) {
+            // ignore error
+        }
+    }
+
     public boolean has(Kind k) {
         switch (k) {
         case CSS:   return hasCss;
@@ -116,9 +176,21 @@ public class Adjunct {
             return;
         }
         if(hasCss)
-            out.write("<link rel='stylesheet' href='"+req.getContextPath()+'/'+manager.rootURL+'/'+slashedName+".css' type='text/css' />");
+            out.write("<link rel='stylesheet' href='"+req.getContextPath()+'/'+cssURL+"' type='text/css' />");
+        if(hasJavaScript)
+            out.write("<script src='"+req.getContextPath()+'/'+jsURL+"' type='text/javascript'></script>");
+    }
+
+    /**
+     * Adds the "Link" header values that preload the CSS and JavaScript that {@link #write} links to.
+     */
+    /*package*/ void addPreloadLinks(StaplerRequest req, List<String> links) {
+        if(inclusionFragment!=null)
+            return; // we don't know what's in there
+        if(hasCss)
+            links.add(AdjunctManager.createPreloadLink(req,cssURL,"style"));
         if(hasJavaScript)
-            out.write("<script src='"+req.getContextPath()+'/'+manager.rootURL+'/'+slashedName+".js' type='text/javascript'></script>");
+            links.add(AdjunctManager.createPreloadLink(req,jsURL,"script"));
     }
 
     public enum Kind { CSS, JS }
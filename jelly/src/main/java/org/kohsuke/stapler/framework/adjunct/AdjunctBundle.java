@@ -0,0 +1,193 @@
+package org.kohsuke.stapler.framework.adjunct;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CSS and JavaScript of several {@link Adjunct}s combined into one file each,
+ * so that a page can load them in two requests instead of dozens.
+ *
+ * <p>
+ * Bundles live in memory, and they are exposed as {@link URL}s of their own, so that they are served
+ * just like any other static resource, including compression and the fingerprinted URLs.
+ *
+ * @author Kohsuke Kawaguchi
+ * @see AdjunctManager#bundling
+ */
+final class AdjunctBundle {
+    /**
+     * Combined CSS, or null if none of the adjuncts have one.
+     */
+    final URL css;
+    /**
+     * Combined JavaScript, or null if none of the adjuncts have one.
+     */
+    final URL js;
+
+    /**
+     * Contents of {@link #css} and {@link #js}.
+     */
+    final String cssText, jsText;
+
+    /**
+     * @param key
+     *      Unique name of the set of adjuncts.
+     * @param adjuncts
+     *      Adjuncts in the order of their dependencies. None of them can have the inclusion fragment.
+     * @param minify
+     *      Whether to minify the CSS.
+     */
+    AdjunctBundle(String key, List<Adjunct> adjuncts, ClassLoader classLoader, boolean minify) throws IOException {
+        StringBuilder css = new StringBuilder();
+        StringBuilder js = new StringBuilder();
+        for (Adjunct a : adjuncts) {
+            if(a.has(Adjunct.Kind.CSS)) {
+                String s = rebaseURLs(read(classLoader,a.slashedName+".css"),a.slashedName);
+                css.append(minify ? minifyCss(s) : s).append('\n');
+            }
+            if(a.has(Adjunct.Kind.JS)) {
+                // never minified. see AdjunctManager.minify
+                // in case the script doesn't end with a semicolon
+                js.append(read(classLoader,a.slashedName+".js")).append("\n;\n");
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+        this.cssText = css.length()>0 ? css.toString() : null;
+        this.jsText = js.length()>0 ? js.toString() : null;
+        this.css = cssText!=null ? createURL(key+".css",cssText,timestamp) : null;
+        this.js = jsText!=null ? createURL(key+".js",jsText,timestamp) : null;
+    }
+
+    private static String read(ClassLoader classLoader, String name) throws IOException {
+        InputStream is = classLoader.getResourceAsStream(name);
+        if(is==null)
+            throw new IOException("No such resource: "+name);
+        Reader r = new InputStreamReader(is,UTF8);
+        try {
+            StringBuilder buf = new StringBuilder();
+            char[] chunk = new char[8192];
+            int len;
+            while((len=r.read(chunk))>0)
+                buf.append(chunk,0,len);
+            return buf.toString();
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Relative URLs in a stylesheet, such as images, are resolved against the stylesheet,
+     * so rewrite them to be relative to the bundle, which is served from "ROOT/static/HASH/bundle.css".
+     */
+    static String rebaseURLs(String css, String slashedName) {
+        String dir = "../../"+slashedName.substring(0,slashedName.lastIndexOf('/')+1);
+        Matcher m = CSS_URL.matcher(css);
+        StringBuffer buf = new StringBuffer();
+        while(m.find()) {
+            String url = m.group(2);
+            if(url.startsWith("/") || url.startsWith("#") || url.indexOf(':')>=0)
+                continue;   // absolute
+            m.appendReplacement(buf,Matcher.quoteReplacement("url("+m.group(1)+dir+url+m.group(3)+")"));
+        }
+        m.appendTail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * Strips comments and the redundant whitespace.
+     * Strings aren't touched, since they can contain anything.
+     */
+    static String minifyCss(String css) {
+        StringBuilder buf = new StringBuilder(css.length());
+        int len = css.length();
+        boolean space = false;
+        for (int i=0; i<len; i++) {
+            char ch = css.charAt(i);
+            if(ch=='/' && i+1<len && css.charAt(i+1)=='*') {
+                int end = css.indexOf("*/",i+2);
+                i = end<0 ? len : end+1;
+                space = true;
+                continue;
+            }
+            if(ch=='"' || ch=='\'') {
+                int end = i+1;
+                while(end<len && css.charAt(end)!=ch) {
+                    if(css.charAt(end)=='\\')   end++;
+                    end++;
+                }
+                end = Math.min(end,len-1);
+                if(space && buf.length()>0) buf.append(' ');
+                space = false;
+                buf.append(css,i,end+1);
+                i = end;
+                continue;
+            }
+            if(Character.isWhitespace(ch)) {
+                space = true;
+                continue;
+            }
+            if(space && buf.length()>0 && CSS_PUNCTUATION.indexOf(ch)<0 && CSS_PUNCTUATION.indexOf(buf.charAt(buf.length()-1))<0)
+                buf.append(' ');
+            space = false;
+            buf.append(ch);
+        }
+        return buf.toString();
+    }
+
+    private static URL createURL(String name, String text, long timestamp) throws IOException {
+        final byte[] data = text.getBytes("UTF-8");
+        final long lastModified = timestamp;
+        return new URL(null,PROTOCOL+":/"+name,new URLStreamHandler() {
+            protected URLConnection openConnection(URL u) {
+                return new URLConnection(u) {
+                    public void connect() {
+                        connected = true;
+                    }
+
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(data);
+                    }
+
+                    @Override
+                    public int getContentLength() {
+                        return data.length;
+                    }
+
+                    @Override
+                    public long getLastModified() {
+                        return lastModified;
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Protocol of the {@link URL}s of bundles, which only means something to their own handlers.
+     */
+    private static final String PROTOCOL = "adjunct-bundle";
+
+    /**
+     * "url(foo.png)", "url('foo.png')", or "url("foo.png")"
+     */
+    private static final Pattern CSS_URL = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)(['\"]?)\\s*\\)");
+
+    /**
+     * Characters around which whitespace is redundant in CSS. Not ':', as "a :hover" differs from "a:hover".
+     */
+    private static final String CSS_PUNCTUATION = "{};,>";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+}
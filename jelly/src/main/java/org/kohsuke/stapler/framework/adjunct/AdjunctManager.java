@@ -1,16 +1,29 @@
 package org.kohsuke.stapler.framework.adjunct;
 
+import com.google.common.collect.MapMaker;
 import org.kohsuke.stapler.MetaClass;
+import org.kohsuke.stapler.MetaClassLoader;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.WebApp;
+import org.apache.commons.jelly.XMLOutput;
+import org.xml.sax.SAXException;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletContext;
 import static javax.servlet.http.HttpServletResponse.SC_FORBIDDEN;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * This application-scoped object works like a factory for {@link Adjunct}s and provides caching.
@@ -25,7 +38,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * @author Kohsuke Kawaguchi
  */
 public class AdjunctManager {
-    private final ConcurrentHashMap<String, Adjunct> adjuncts = new ConcurrentHashMap<String,Adjunct>();
+    /**
+     * {@link Adjunct}s, loaded or being loaded, keyed by their names.
+     */
+    private final ConcurrentHashMap<String,FutureTask<Adjunct>> adjuncts = new ConcurrentHashMap<String,FutureTask<Adjunct>>();
 
     /**
      * Map used as a set to remember which resources can be served.
@@ -34,6 +50,74 @@ public class AdjunctManager {
 
     private final ClassLoader classLoader;
 
+    private final WebApp webApp;
+
+    /**
+     * {@link AdjunctBundle}s keyed by the sorted names of the adjuncts in them.
+     * Up to {@link #MAX_BUNDLES}, as views that include adjuncts conditionally can combine them in many ways.
+     */
+    private final ConcurrentHashMap<String,AdjunctBundle> bundles = new ConcurrentHashMap<String,AdjunctBundle>();
+
+    /**
+     * Files of {@link #bundles} keyed by their fingerprints, which are in their URLs.
+     * A bundle never changes once it's built, so there are at most two of them for each bundle.
+     */
+    private final ConcurrentHashMap<String,URL> bundleFiles = new ConcurrentHashMap<String,URL>();
+
+    /**
+     * If true, the CSS and JavaScript of the adjuncts that a page needs are combined into one file each,
+     * instead of being linked one by one, so that heavy pages load in a few requests.
+     *
+     * <p>
+     * Off by default. Bundles are served from fingerprinted URLs, so they aren't used with
+     * {@link MetaClass#NO_CACHE}. Adjuncts that come with their own HTML aren't bundled.
+     */
+    public volatile boolean bundling = Boolean.getBoolean(AdjunctManager.class.getName()+".bundling");
+
+    /**
+     * If true, the CSS of {@link #bundling bundles} is stripped of comments and redundant whitespace.
+     *
+     * <p>
+     * JavaScript is left alone. Telling comments and whitespace apart from strings, template literals,
+     * and regular expressions takes a real JavaScript parser, and the compression of the response
+     * takes care of most of the whitespace anyway.
+     */
+    public volatile boolean minify = Boolean.getBoolean(AdjunctManager.class.getName()+".minify");
+
+    /**
+     * {@link #bundling Bundles} shorter than this many characters are written into the page,
+     * saving the request for it. 0 to always link them.
+     */
+    public volatile int inlineThreshold = Integer.getInteger(AdjunctManager.class.getName()+".inlineThreshold",0);
+
+    /**
+     * If true, views that needed adjuncts the last time they were rendered send "Link: rel=preload" headers
+     * for them before the rendering starts, so that browsers start loading CSS and JavaScript
+     * before they even see the &lt;head> of the page.
+     *
+     * <p>
+     * On by default.
+     *
+     * @see AdjunctsInPage#preload(Object, StaplerResponse)
+     */
+    public volatile boolean preload = !Boolean.getBoolean(AdjunctManager.class.getName()+".disablePreload");
+
+    /**
+     * "Link" header values for {@link #preload}, keyed by views.
+     * Views are compiled scripts, which are discarded when the memory runs low, so don't keep them alive.
+     */
+    private final Map<Object,List<String>> preloadLinks = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Outcomes of {@link #getResourceURL(Class, String)}, keyed by the classes and then by the names.
+     * Don't keep the classes of discarded class loaders alive.
+     */
+    private final Map<Class,Map<String,String>> resourceURLs = new MapMaker().weakKeys().makeComputingMap(new com.google.common.base.Function<Class,Map<String,String>>() {
+        public Map<String,String> apply(Class c) {
+            return new ConcurrentHashMap<String,String>();
+        }
+    });
+
     /**
      * Absolute URL of the {@link AdjunctManager} in the calling application where it is bound to.
      *
@@ -53,6 +137,7 @@ public class AdjunctManager {
     public AdjunctManager(ServletContext context,ClassLoader classLoader, String rootURL) {
         this.classLoader = classLoader;
         this.rootURL = rootURL;
+        this.webApp = WebApp.get(context);
         // register this globally
         context.setAttribute(KEY,this);
     }
@@ -69,24 +154,236 @@ public class AdjunctManager {
      * @throws IOException
      *      if failed to locate {@link Adjunct}.
      */
-    public Adjunct get(String name) throws IOException {
-        Adjunct a = adjuncts.get(name);
-        if(a!=null) return a;   // found it
+    public Adjunct get(final String name) throws IOException {
+        FutureTask<Adjunct> f = adjuncts.get(name);
+        if(f==null) {
+            // the thread that registers the task loads the adjunct, and others asking for the same adjunct wait for it.
+            // threads loading other adjuncts aren't blocked.
+            FutureTask<Adjunct> t = new FutureTask<Adjunct>(new Callable<Adjunct>() {
+                public Adjunct call() throws IOException {
+                    return new Adjunct(AdjunctManager.this,name,classLoader);
+                }
+            });
+            f = adjuncts.putIfAbsent(name,t);
+            if(f==null) {
+                f = t;
+                t.run();
+            }
+        }
 
-        synchronized (this) {
-            a = adjuncts.get(name);
-            if(a!=null) return a;   // one more check before we start loading
-            a = new Adjunct(this,name,classLoader);
-            adjuncts.put(name,a);
-            return a;
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException)new InterruptedIOException("Interrupted while loading "+name).initCause(e);
+        } catch (ExecutionException e) {
+            // don't remember the failure, so that the next request tries again
+            adjuncts.remove(name,f);
+            Throwable c = e.getCause();
+            if(c instanceof IOException)        throw (IOException)c;
+            if(c instanceof RuntimeException)   throw (RuntimeException)c;
+            throw (Error)c;
         }
     }
 
+    /**
+     * Writes out the links to the given adjuncts, bundling them if {@link #bundling} is on.
+     *
+     * @param adjuncts
+     *      Adjuncts in the order of their dependencies.
+     * @param links
+     *      Receives the "Link" header values that preload what's linked. See {@link #preload}.
+     */
+    /*package*/ void write(StaplerRequest req, List<Adjunct> adjuncts, XMLOutput out, List<String> links) throws IOException, SAXException {
+        if(!bundling || MetaClass.NO_CACHE) {
+            for (Adjunct a : adjuncts)
+                write(req,a,out,links);
+            return;
+        }
+
+        // adjuncts that bring their own HTML split the list into runs, so that the order is retained
+        int start=0;
+        for (int i=0; i<=adjuncts.size(); i++) {
+            if(i<adjuncts.size() && !adjuncts.get(i).hasInclusionFragment())
+                continue;
+            writeBundle(req,adjuncts.subList(start,i),out,links);
+            if(i<adjuncts.size())
+                write(req,adjuncts.get(i),out,links);
+            start = i+1;
+        }
+    }
+
+    private void write(StaplerRequest req, Adjunct a, XMLOutput out, List<String> links) throws SAXException {
+        a.write(req,out);
+        a.addPreloadLinks(req,links);
+    }
+
+    private void writeBundle(StaplerRequest req, List<Adjunct> adjuncts, XMLOutput out, List<String> links) throws IOException, SAXException {
+        AdjunctBundle b = adjuncts.size()<2 ? null : getBundle(adjuncts);
+        String cssURL = b!=null ? getBundleURL(b.css,"bundle.css") : null;
+        String jsURL = b!=null ? getBundleURL(b.js,"bundle.js") : null;
+        if(b==null || (b.css!=null && cssURL==null) || (b.js!=null && jsURL==null)) {
+            // nothing to gain, or failed to fingerprint
+            for (Adjunct a : adjuncts)
+                write(req,a,out,links);
+            return;
+        }
+
+        if(b.css!=null) {
+            if(shouldInline(b.cssText,"</style"))
+                out.write("<style type='text/css'>"+b.cssText+"</style>");
+            else {
+                out.write("<link rel='stylesheet' href='"+req.getContextPath()+'/'+cssURL+"' type='text/css' />");
+                links.add(createPreloadLink(req,cssURL,"style"));
+            }
+        }
+        if(b.js!=null) {
+            if(shouldInline(b.jsText,"</script"))
+                out.write("<script type='text/javascript'>"+b.jsText+"</script>");
+            else {
+                out.write("<script src='"+req.getContextPath()+'/'+jsURL+"' type='text/javascript'></script>");
+                links.add(createPreloadLink(req,jsURL,"script"));
+            }
+        }
+    }
+
+    private boolean shouldInline(String text, String endTag) {
+        // the end tag in the content would end the element prematurely
+        return text.length()<inlineThreshold && text.toLowerCase().indexOf(endTag)<0;
+    }
+
+    /**
+     * Builds the value of the "Link" header that tells the browser to start loading the given resource.
+     *
+     * @param url
+     *      URL relative to the context path.
+     * @param type
+     *      What the resource is, such as "style" or "script".
+     */
+    /*package*/ static String createPreloadLink(StaplerRequest req, String url, String type) {
+        return '<'+req.getContextPath()+'/'+url+">; rel=preload; as="+type;
+    }
+
+    /**
+     * Obtains the "Link" header values recorded for the given view.
+     *
+     * @return
+     *      null if the view hasn't been rendered yet, or if {@link #preload} is off.
+     */
+    /*package*/ List<String> getPreloadLinks(Object view) {
+        return preload ? preloadLinks.get(view) : null;
+    }
+
+    /*package*/ void setPreloadLinks(Object view, List<String> links) {
+        if(!preload)
+            return;
+        if(links.isEmpty())
+            preloadLinks.remove(view);
+        else
+            preloadLinks.put(view,Collections.unmodifiableList(new ArrayList<String>(links)));
+    }
+
+    /**
+     * Obtains the bundle of the given adjuncts, building it if necessary.
+     *
+     * @return
+     *      null if there are too many bundles already.
+     */
+    private AdjunctBundle getBundle(List<Adjunct> adjuncts) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (Adjunct a : adjuncts)
+            names.add(a.name);
+        Collections.sort(names);
+        StringBuilder key = new StringBuilder();
+        for (String n : names) {
+            if(key.length()>0)  key.append(',');
+            key.append(n);
+        }
+
+        AdjunctBundle b = bundles.get(key.toString());
+        if(b==null) {
+            if(bundles.size()>=MAX_BUNDLES)
+                return null;    // link them one by one
+            // the dependency order of the same set of adjuncts works for every page that needs them
+            b = new AdjunctBundle(key.toString(),adjuncts,classLoader,minify);
+            AdjunctBundle prev = bundles.putIfAbsent(key.toString(),b);
+            if(prev!=null)  b = prev;
+        }
+        return b;
+    }
+
+    /**
+     * Computes the URL relative to the context path that serves the given file of a bundle.
+     *
+     * @return
+     *      null if the file can't be fingerprinted.
+     */
+    private String getBundleURL(URL file, String name) {
+        if(file==null)
+            return null;
+        String fingerprint = webApp.resourceFingerprints.get(file);
+        if(fingerprint==null)
+            return null;
+        bundleFiles.put(fingerprint,file);
+        return rootURL+STATIC+fingerprint+'/'+name;
+    }
+
+    /**
+     * Computes the URL of a resource in the class loader, like "adjuncts/static/3f2a.../org/example/style.css",
+     * which carries the fingerprint of the contents so that browsers can cache it forever.
+     *
+     * @param path
+     *      Path of the resource in the class loader, like "org/example/style.css".
+     * @return
+     *      The URL relative to the context path of the application, like {@link #rootURL}.
+     *      If the resource can't be fingerprinted, the URL without the fingerprint.
+     * @see org.kohsuke.stapler.ResourceFingerprints
+     */
+    public String getResourceURL(String path) {
+        String fingerprint = webApp.resourceFingerprints.get(MetaClassLoader.get(classLoader).getResource(path));
+        if(fingerprint==null)
+            return rootURL+'/'+path;
+        return rootURL+STATIC+fingerprint+'/'+path;
+    }
+
+    /**
+     * Same as {@link #getResourceURL(String)} for the resource of the given class, like "style.css" of
+     * <tt>org.example.Foo</tt> for "org/example/Foo/style.css", except that the URL is computed only once,
+     * as views ask for the same ones on every rendering.
+     *
+     * <p>
+     * If the resource changes in place afterward, the URL keeps the old fingerprint. Such a request is
+     * still served the current contents, just without letting browsers cache it forever.
+     */
+    public String getResourceURL(Class c, String localName) {
+        if(MetaClass.NO_CACHE)
+            return getResourceURL(c.getName().replace('.','/')+'/'+localName);
+        Map<String,String> urls = resourceURLs.get(c);
+        String url = urls.get(localName);
+        if(url==null)
+            urls.put(localName,url=getResourceURL(c.getName().replace('.','/')+'/'+localName));
+        return url;
+    }
+
     /**
      * Serves resources in the class loader.
      */
     public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
         String path = req.getRestOfPath();
+        boolean staticLink = false;
+        if(path.startsWith(STATIC)) {
+            // skip the fingerprint. Stapler checks it against the resource when serving
+            int idx = path.indexOf('/',STATIC.length());
+            if(idx>0) {
+                URL bundle = bundleFiles.get(path.substring(STATIC.length(),idx));
+                if(bundle!=null) {
+                    rsp.serveFile(req,bundle,365L * 24 * 60 * 60 * 1000 /*1 year*/);
+                    return;
+                }
+                path = path.substring(idx);
+                staticLink = true;
+            }
+        }
         if(!allowedResources.containsKey(path)) {
             if(!allowResourceToBeServed(path)) {
                 rsp.sendError(SC_FORBIDDEN);
@@ -96,11 +393,13 @@ public class AdjunctManager {
             allowedResources.put(path,path);
         }
 
-        URL res = classLoader.getResource(path);
+        URL res = MetaClassLoader.get(classLoader).getResource(path);
         if(res==null) {
             rsp.sendError(SC_NOT_FOUND);
         } else {
             long expires = MetaClass.NO_CACHE ? 0 : 24L * 60 * 60 * 1000; /*1 day*/
+            if(staticLink)
+                expires*=365;   // the URL changes when the resource does
             rsp.serveFile(req,res,expires);
         }
     }
@@ -125,8 +424,18 @@ public class AdjunctManager {
             || absolutePath.endsWith(".js");
     }
 
+    /**
+     * Prefix of the URLs with fingerprints, as in {@link #getResourceURL(String)}.
+     */
+    private static final String STATIC = "/static/";
+
     /**
      * Key in {@link ServletContext} to look up {@link AdjunctManager}.
      */
     private static final String KEY = AdjunctManager.class.getName();
+
+    /**
+     * Beyond this number of {@link #bundles}, adjuncts of new combinations are linked one by one.
+     */
+    public static int MAX_BUNDLES = Integer.getInteger(AdjunctManager.class.getName()+".maxBundles",256);
 }
@@ -3,6 +3,7 @@ package org.kohsuke.stapler.framework.adjunct;
 import org.apache.commons.jelly.XMLOutput;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import org.kohsuke.stapler.framework.adjunct.AdjunctManager;
 import org.kohsuke.stapler.framework.adjunct.Adjunct;
 import org.xml.sax.SAXException;
@@ -33,6 +34,16 @@ public class AdjunctsInPage {
     
     private final StaplerRequest request;
 
+    /**
+     * "Link" header values that preload what's been linked so far. See {@link AdjunctManager#preload}.
+     */
+    private final List<String> links = new ArrayList<String>();
+
+    /**
+     * The view that renders the page, whose adjuncts are remembered for the next time.
+     */
+    private Object view;
+
     /**
      * Obtains the instance associated with the current request of the given {@link StaplerRequest}.
      */
@@ -68,8 +79,7 @@ public class AdjunctsInPage {
         for (String include : includes)
             findNeeded(include,needed);
 
-        for (Adjunct adj : needed)
-            adj.write(request,out);
+        manager.write(request,needed,out,links);
     }
 
     /**
@@ -85,26 +95,63 @@ public class AdjunctsInPage {
      * Writes out what's spooled by {@link #spool(String[])} method. 
      */
     public void writeSpooled(XMLOutput out) throws SAXException {
-        for (Adjunct adj : pending)
-            adj.write(request,out);
+        try {
+            manager.write(request,pending,out,links);
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
         pending.clear();
     }
 
+    /**
+     * Called before the given view renders the page, to send "Link: rel=preload" headers
+     * for the adjuncts that the view needed the last time.
+     *
+     * <p>
+     * Adjuncts are otherwise only discovered as the page renders, and browsers only see them
+     * once the &lt;head> is sent. With the headers, they can start loading them right away.
+     * Only the first view of the request counts, as others are rendered as a part of it.
+     *
+     * <p>
+     * The servlet API doesn't let us send "103 Early Hints" ahead of the real response,
+     * so this is as early as the headers can go out.
+     */
+    public void preload(Object view, StaplerResponse rsp) {
+        if(this.view!=null)
+            return;
+        this.view = view;
+
+        List<String> l = manager.getPreloadLinks(view);
+        if(l==null || rsp.isCommitted())
+            return;
+        for (String link : l)
+            rsp.addHeader("Link",link);
+    }
+
+    /**
+     * Called after the view given to {@link #preload(Object, StaplerResponse)} has rendered the page,
+     * to remember what it needed for the next time.
+     */
+    public void remember(Object view) {
+        if(this.view==view)
+            manager.setPreloadLinks(view,links);
+    }
+
     /**
      * Builds up the needed adjuncts into the 'needed' list.
      */
     private void findNeeded(String include, List<Adjunct> needed) throws IOException {
-        if(!included.add(include))
+        if(included.contains(include))
             return; // alerady sent
 
-        // list dependencies first
         try {
-            Adjunct a = manager.get(include);
-            for (String req : a.required)
-                findNeeded(req,needed);
-            needed.add(a);
+            // the closure lists dependencies first
+            for (Adjunct a : manager.get(include).getClosure())
+                if(included.add(a.name))
+                    needed.add(a);
         } catch (NoSuchAdjunctException e) {
             // ignore error
+            included.add(include);
         }
     }
 
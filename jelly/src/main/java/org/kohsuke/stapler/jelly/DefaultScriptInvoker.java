@@ -2,6 +2,8 @@ package org.kohsuke.stapler.jelly;
 
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.framework.adjunct.AdjunctManager;
+import org.kohsuke.stapler.framework.adjunct.AdjunctsInPage;
 import org.apache.commons.jelly.Script;
 import org.apache.commons.jelly.JellyTagException;
 import org.apache.commons.jelly.XMLOutput;
@@ -22,6 +24,13 @@ import java.util.Enumeration;
  */
 public class DefaultScriptInvoker implements ScriptInvoker {
     public void invokeScript(StaplerRequest req, StaplerResponse rsp, Script script, Object it) throws IOException, JellyTagException {
+        AdjunctsInPage adjuncts = null;
+        if(AdjunctManager.get(req.getServletContext())!=null) {
+            // let the browser start loading the adjuncts this view needed last time
+            adjuncts = AdjunctsInPage.get(req);
+            adjuncts.preload(script,rsp);
+        }
+
         JellyContext context = createContext(req,rsp,script,it);
         exportVariables(req, rsp, script, it, context);
 
@@ -30,6 +39,9 @@ public class DefaultScriptInvoker implements ScriptInvoker {
         
         xmlOutput.flush();
         xmlOutput.close();
+
+        if(adjuncts!=null)
+            adjuncts.remember(script);
     }
 
     protected XMLOutput createXMLOutput(StaplerRequest req, StaplerResponse rsp, Script script, Object it) throws IOException {
@@ -39,14 +51,16 @@ public class DefaultScriptInvoker implements ScriptInvoker {
 
     protected OutputStream createOutputStream(StaplerRequest req, StaplerResponse rsp, Script script, Object it) throws IOException {
         // do we want to do compression?
-        OutputStream output=null;
+        boolean compress = false;
         if (script instanceof TagScript) {
             TagScript ts = (TagScript) script;
-            if(ts.getLocalName().equals("compress"))
-                output = rsp.getCompressedOutputStream(req);
+            compress = ts.getLocalName().equals("compress");
         }
-        if(output==null)    // nope
-            output = new BufferedOutputStream(rsp.getOutputStream());
+
+        // in response to HEAD, this renders the view for the headers it sets, without sending the body
+        OutputStream output = rsp.getOutputStream(req,compress);
+        if(!compress)
+            output = new BufferedOutputStream(output);
 
         output = new FilterOutputStream(output) {
             public void flush() {
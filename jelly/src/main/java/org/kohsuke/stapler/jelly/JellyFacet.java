@@ -16,6 +16,7 @@ import javax.servlet.ServletContextListener;
 import javax.servlet.ServletContextEvent;
 import java.io.IOException;
 import java.util.List;
+import java.util.logging.Level;
 
 /**
  * {@link Facet} that adds Jelly as the view.
@@ -83,6 +84,15 @@ public class JellyFacet extends Facet {
         return nodeMetaClass.loadTearOff(JellyClassTearOff.class).serveIndexJelly(req,rsp,node);
     }
 
+    public void warmUp(MetaClass owner) {
+        try {
+            owner.loadTearOff(JellyClassTearOff.class).findScript("index.jelly");
+        } catch (Exception e) {
+            // the view will be loaded again on demand, and the error is reported then
+            LOGGER.log(Level.FINE, "Failed to warm up index.jelly of "+owner.clazz, e);
+        }
+    }
+
     /**
      * Sets the Jelly {@link ExpressionFactory} to be used to parse views.
      *
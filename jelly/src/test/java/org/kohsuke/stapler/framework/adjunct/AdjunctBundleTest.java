@@ -0,0 +1,62 @@
+package org.kohsuke.stapler.framework.adjunct;
+
+import junit.framework.TestCase;
+
+import javax.servlet.ServletContext;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class AdjunctBundleTest extends TestCase {
+    private static final String PREFIX = "org.kohsuke.stapler.framework.adjunct.AdjunctBundleTest.";
+
+    public void testRebaseURLs() {
+        assertEquals("a { background: url(../../org/example/img/a.png) } b { background: url('../../org/example/b.png') }",
+                AdjunctBundle.rebaseURLs("a { background: url(img/a.png) } b { background: url('b.png') }","org/example/style"));
+
+        String absolute = "a { background: url(/img/a.png) } b { background: url(\"http://example.org/b.png\") } c { behavior: url(#default) }";
+        assertEquals(absolute,AdjunctBundle.rebaseURLs(absolute,"org/example/style"));
+    }
+
+    public void testMinifyCss() {
+        assertEquals(".a>.b,.c{color:red}",AdjunctBundle.minifyCss("/* comment */ .a > .b ,\n  .c {\n\tcolor:red\n}\n"));
+        // the space is significant here
+        assertEquals("a :hover{margin:0 auto}",AdjunctBundle.minifyCss("a :hover { margin:0   auto }"));
+        // strings are kept as they are
+        assertEquals("a{content: \"  /* x */  \\\"  \"}",AdjunctBundle.minifyCss("a { content: \"  /* x */  \\\"  \" }"));
+    }
+
+    /**
+     * CSS is minified, and JavaScript is kept as it is.
+     */
+    public void testMinify() throws Exception {
+        ClassLoader cl = getClass().getClassLoader();
+        AdjunctManager manager = new AdjunctManager(createServletContext(),cl,"adjuncts");
+        AdjunctBundle b = new AdjunctBundle("test",Arrays.asList(
+                new Adjunct(manager,PREFIX+"a",cl),new Adjunct(manager,PREFIX+"b",cl)),cl,true);
+
+        assertEquals(".a>.b{background: url(../../org/kohsuke/stapler/framework/adjunct/AdjunctBundleTest/img/a.png);}\n",b.cssText);
+        assertEquals("var a = 1;\n\n;\n"
+                +"// @include "+PREFIX+"a\nvar b = `\n    // not a comment\n`;\n\n;\n",b.jsText);
+    }
+
+    private static ServletContext createServletContext() {
+        final Map<String,Object> attributes = new HashMap<String,Object>();
+        return (ServletContext)Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+                new Class[]{ServletContext.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if(method.getName().equals("getAttribute"))
+                    return attributes.get(args[0]);
+                if(method.getName().equals("setAttribute"))
+                    return attributes.put((String)args[0],args[1]);
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
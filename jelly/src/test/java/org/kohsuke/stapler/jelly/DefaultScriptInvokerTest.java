@@ -0,0 +1,95 @@
+package org.kohsuke.stapler.jelly;
+
+import junit.framework.TestCase;
+import org.apache.commons.jelly.impl.TagScript;
+import org.kohsuke.stapler.ResponseImpl;
+import org.kohsuke.stapler.StaplerRequest;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Kohsuke Kawaguchi
+ */
+public class DefaultScriptInvokerTest extends TestCase {
+    private String method = "GET";
+    private final Map<String,String> requestHeaders = new HashMap<String,String>();
+    private final Map<String,String> headers = new HashMap<String,String>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private final StaplerRequest req = (StaplerRequest)Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[]{StaplerRequest.class}, new InvocationHandler() {
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            if(m.getName().equals("getMethod"))
+                return method;
+            if(m.getName().equals("getHeader"))
+                return requestHeaders.get(args[0]);
+            throw new UnsupportedOperationException(m.getName());
+        }
+    });
+
+    private final ResponseImpl rsp = new ResponseImpl(null,(HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[]{HttpServletResponse.class}, new InvocationHandler() {
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            String n = m.getName();
+            if(n.equals("addHeader") || n.equals("setHeader"))
+                headers.put((String)args[0],(String)args[1]);
+            else if(n.equals("setContentLength"))
+                headers.put("Content-Length",String.valueOf(args[0]));
+            else if(n.equals("isCommitted"))
+                return false;
+            else if(n.equals("getOutputStream"))
+                return new ServletOutputStream() {
+                    public void write(int b) {
+                        body.write(b);
+                    }
+                };
+            else
+                throw new UnsupportedOperationException(n);
+            return null;
+        }
+    }));
+
+    private void render(TagScript script) throws Exception {
+        OutputStream o = new DefaultScriptInvoker().createOutputStream(req,rsp,script,null);
+        o.write("<html></html>".getBytes());
+        o.close();
+    }
+
+    private static TagScript compress() {
+        TagScript s = new TagScript();
+        s.setLocalName("compress");
+        return s;
+    }
+
+    public void testGet() throws Exception {
+        render(null);
+        assertEquals("<html></html>",body.toString());
+    }
+
+    /**
+     * The view is rendered for the headers, but the body isn't sent.
+     */
+    public void testHead() throws Exception {
+        method = "HEAD";
+        render(null);
+        assertEquals("13",headers.get("Content-Length"));
+        assertEquals(0,body.size());
+    }
+
+    public void testHeadOfCompressedView() throws Exception {
+        method = "HEAD";
+        requestHeaders.put("Accept-Encoding","gzip");
+        render(compress());
+        assertEquals("gzip",headers.get("Content-Encoding"));
+        assertNull(headers.get("Content-Length"));
+        assertEquals(0,body.size());
+    }
+}
@@ -0,0 +1,4 @@
+// @include org.kohsuke.stapler.framework.adjunct.AdjunctBundleTest.a
+var b = `
+    // not a comment
+`;
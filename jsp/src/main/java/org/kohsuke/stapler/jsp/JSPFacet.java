@@ -55,12 +55,23 @@ public class JSPFacet extends Facet {
     public RequestDispatcher createRequestDispatcher(RequestImpl request, Class type, Object it, String viewName) throws IOException {
         ServletContext context = request.stapler.getServletContext();
 
-        for( Class c = type; c!=Object.class; c=c.getSuperclass() ) {
-            String name = "/WEB-INF/side-files/"+c.getName().replace('.','/').replace('$','/')+'/'+viewName;
+        // Tomcat returns a RequestDispatcher even if the JSP file doesn't exist.
+        // so check if the resource exists first.
+        String name = request.stapler.getWebApp().getMetaClass(type).findSideFile(viewName);
+        if(name==null)
+            return null;
+
+        RequestDispatcher disp = context.getRequestDispatcher(name);
+        if(disp!=null) {
+            return new RequestDispatcherWrapper(disp,it);
+        }
+
+        // the container wouldn't dispatch to it, so fall back to the JSPs of the super classes,
+        // like we did before the side files were cached. this is rare enough not to cache.
+        for( Class c = type; c!=Object.class && c!=null; c=c.getSuperclass() ) {
+            name = "/WEB-INF/side-files/"+c.getName().replace('.','/').replace('$','/')+'/'+viewName;
             if(context.getResource(name)!=null) {
-                // Tomcat returns a RequestDispatcher even if the JSP file doesn't exist.
-                // so check if the resource exists first.
-                RequestDispatcher disp = context.getRequestDispatcher(name);
+                disp = context.getRequestDispatcher(name);
                 if(disp!=null) {
                     return new RequestDispatcherWrapper(disp,it);
                 }